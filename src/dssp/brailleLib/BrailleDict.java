@@ -1,12 +1,12 @@
 package dssp.brailleLib;
 
 import java.io.File;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 
@@ -17,7 +17,12 @@ import org.w3c.dom.NodeList;
 import dssp.brailleLib.BrailleInfo.TYPE;
 
 /**
- * 墨字と点字の辞書
+ * 墨字と点字の辞書<br>
+ * ・土台の辞書を指定して生成した場合は、土台の辞書に重ねる上書き辞書になる。
+ * 上書き辞書にない墨字と符号は土台の辞書から検索し、同じ墨字は上書き辞書を優先する<br>
+ * ・土台の辞書は複数の上書き辞書で共有できる。上書き辞書の変更は土台の辞書に影響しない<br>
+ * ・登録したBrailleInfoは変更できなくなり、点訳の結果などで共有される。
+ * 変更する場合はBrailleInfo.toMutable()で複製し、replaceBrailleInfo()で置き換える
  *
  * @author DSSP/Minoru Yagi
  *
@@ -32,24 +37,51 @@ public final class BrailleDict {
 
     private static BrailleInfoComparator comparator = new BrailleInfoComparator();
 
+    /**
+    * 土台の辞書(ない場合はnull)
+    */
+    private final BrailleDict base;
     private final Map<BrailleInfo.EXTRA, BrailleInfo> extraMap = Util.newTreeMap();
     private final TreeSet<BrailleInfo> brailleInfoList = Util.newTreeSet(comparator);
-
-    private final static String NAME_DICT = "dict";
-    private final static String NAME_EXTRA = "extra";
-    private final static String NAME_CHARS = "chars";
-    private final static String NAME_CHAR = "char";
-    private final static String NAME_SUMIJI = "sumiji";
-    private final static String NAME_TYPE = "type";
-    private final static String NAME_BRAILE = "braile";
-    private final static String NAME_CODE = "code";
-    private final static String NAME_INDEX = "index";
-    private final static String NAME_NABCC = "nabcc";
-    private final static String NAME_POSTCHAR = "postChar";
-
-    private final static String NAME_DESC = "desc";
-
-    private final static EnumMap<BrailleInfo.CHECK, String> checkNameMap = new EnumMap<BrailleInfo.CHECK, String>(
+    /**
+    * 墨字からBrailleInfoへの索引<br>
+    * ・brailleInfoListと同じ内容を保つ
+    */
+    private final Map<String, BrailleInfo> sumijiMap = Util.newHashMap();
+    /**
+    * 索引を作り終えたスナップショット<br>
+    * ・登録内容か符号が変わったらnullにして、次のcompile()で作り直す
+    */
+    private volatile CompiledBrailleDict compiled = null;
+    /**
+    * 符号を含めたマスのパック値の列、符号を含めたNABCCから、BrailleInfoへの索引<br>
+    * ・キーが同じBrailleInfoは墨字の順に並べ、先頭を検索の結果にする<br>
+    * ・登録と削除のたびに更新するので、getBraille()でスナップショットを作り直さずに済む<br>
+    * ・キーは符号によって変わるので、符号を変更したら次の検索で作り直す<br>
+    * ・登録されていない符号を持つBrailleInfoは含めない
+    */
+    private final Map<String, TreeSet<BrailleInfo>> cellIndex = Util.newHashMap();
+    private final Map<String, TreeSet<BrailleInfo>> nabccIndex = Util.newHashMap();
+    /**
+    * 索引を作ったときの符号の版数(-1の場合は作っていない)
+    */
+    private int indexExtraVersion = -1;
+
+    final static String NAME_DICT = "dict";
+    final static String NAME_EXTRA = "extra";
+    final static String NAME_CHARS = "chars";
+    final static String NAME_CHAR = "char";
+    final static String NAME_SUMIJI = "sumiji";
+    final static String NAME_TYPE = "type";
+    final static String NAME_BRAILE = "braile";
+    final static String NAME_CODE = "code";
+    final static String NAME_INDEX = "index";
+    final static String NAME_NABCC = "nabcc";
+    final static String NAME_POSTCHAR = "postChar";
+
+    final static String NAME_DESC = "desc";
+
+    final static EnumMap<BrailleInfo.CHECK, String> checkNameMap = new EnumMap<BrailleInfo.CHECK, String>(
             BrailleInfo.CHECK.class);
     static {
         checkNameMap.put(BrailleInfo.CHECK.PRECHECK, "preCheck");
@@ -58,11 +90,31 @@ public final class BrailleDict {
 
     private final static String PATH_CHARS = String.format("/%s/%s", NAME_DICT, NAME_CHARS);
     private final static String PATH_CHAR = String.format("%s/%s", PATH_CHARS, NAME_CHAR);
-    private int maxSumijiLen = 0;
-    private int maxNABCCLen = 0;
-    private int maxBoxCount = 0;
+    /**
+    * 墨字の長さ、符号を含めたNABCCの長さ、マスの数ごとの件数<br>
+    * ・登録と削除のたびに増減させて、最大値を求め直さずに済ませる<br>
+    * ・NABCCの長さは符号によって変わるので、符号を変更したら数え直す。
+    * 上書き辞書では土台の辞書の符号も使うので、土台の辞書の符号が変わった場合も数え直す
+    */
+    private final LengthHistogram sumijiLenCount = new LengthHistogram();
+    private final LengthHistogram nabccLenCount = new LengthHistogram();
+    private final LengthHistogram boxCountCount = new LengthHistogram();
+    /**
+    * NABCCの長さを数えたときの符号の版数
+    */
+    private int nabccLenVersion = 0;
+    /**
+    * まとめて変更している間は、索引を捨てるのと数え直しとをcommit()まで遅らせる
+    */
+    private boolean editing = false;
+    private boolean extraChanged = false;
+    /**
+    * 符号の版数<br>
+    * ・符号を変更するたびに増やす。BrailleInfoが符号を含めたNABCCを作り直すかの判断に使う
+    */
+    private volatile int extraVersion = 0;
 
-    private final static EnumMap<BrailleInfo.EXTRA, String> extraNameMap = new EnumMap<BrailleInfo.EXTRA, String>(
+    final static EnumMap<BrailleInfo.EXTRA, String> extraNameMap = new EnumMap<BrailleInfo.EXTRA, String>(
             BrailleInfo.EXTRA.class);
     static {
         extraNameMap.put(BrailleInfo.EXTRA.GAIJIFU, "gaijifu");
@@ -79,7 +131,33 @@ public final class BrailleDict {
         }
     };
 
-    private final static String DOT_SEPARATOR = ",";
+    final static String DOT_SEPARATOR = ",";
+
+    /**
+    * 辞書を生成する
+    */
+    public BrailleDict() {
+        this(null);
+    }
+
+    /**
+    * 土台の辞書に重ねる上書き辞書を生成する<br>
+    * ・土台の辞書の内容は複製しない
+    *
+    * @param base 土台の辞書(nullの場合は土台なし)
+    */
+    public BrailleDict(BrailleDict base) {
+        this.base = base;
+    }
+
+    /**
+    * 土台の辞書を取得する
+    *
+    * @return 土台の辞書 ない場合はnull
+    */
+    public BrailleDict getBase() {
+        return this.base;
+    }
 
     /**
     * 辞書を読み込む<br>
@@ -92,7 +170,52 @@ public final class BrailleDict {
         try {
             Util.logInfo("loading %s", file.getPath());
             Document doc = XmlUtil.parse(file);
-            this.loadBraille(doc);
+
+            return this.loadBraille(doc);
+        } catch (Exception ex) {
+            Util.logException(ex);
+            return false;
+        }
+    }
+
+    /**
+    * 辞書を読み込む<br>
+    * ・DOMを作らずに、StAXで要素を読みながらBrailleInfoを登録する<br>
+    * ・読み込む内容はload(File)と同じ<br>
+    * ・例外が起きた場合はUtil.logでログ出力する
+    *
+    * @param file 辞書ファイル
+    * @return true=成功 false=失敗
+    */
+    public boolean loadStreaming(File file) {
+        try {
+            Util.logInfo("loading %s", file.getPath());
+            BrailleDictReader.read(file, this);
+
+            return true;
+        } catch (Exception ex) {
+            Util.logException(ex);
+            return false;
+        }
+    }
+
+    /**
+    * バイナリ形式の辞書を読み込む<br>
+    * ・BrailleInfoは読み込む時に全て生成する。マスは1マスずつではなく、まとめて設定する<br>
+    * ・土台がなく空の辞書に読み込む場合は、ファイルに書かれた索引からスナップショットを作り、compile()で索引を作り直さない<br>
+    * ・例外が起きた場合はUtil.logでログ出力し、辞書は変更しない
+    *
+    * @param file バイナリ形式の辞書ファイル
+    * @return true=成功 false=失敗
+    */
+    public boolean loadBinary(File file) {
+        try {
+            Util.logInfo("loading %s", file.getPath());
+            CompiledBrailleDict.Index index = BrailleDictBinary.read(file, this);
+            if (null != index) {
+                this.compiled = new CompiledBrailleDict(this, index, this.extraMap, this.sumijiLenCount.getMax(),
+                        this.boxCountCount.getMax(), this.nabccLenCount().getMax());
+            }
 
             return true;
         } catch (Exception ex) {
@@ -101,6 +224,31 @@ public final class BrailleDict {
         }
     }
 
+    /**
+    * バイナリ形式の辞書をキャッシュとして使って、辞書を読み込む<br>
+    * ・cacheがfileより新しい場合はcacheを読む<br>
+    * ・cacheがない、古い、読めない場合はfileを読んでcacheを作り直す。作り直せない場合はログ出力し、fileを読んだ結果を返す
+    *
+    * @param file 辞書ファイル
+    * @param cache バイナリ形式の辞書ファイル
+    * @return true=成功 false=失敗
+    */
+    public boolean load(File file, File cache) {
+        if (cache.isFile() && cache.lastModified() >= file.lastModified()) {
+            if (this.loadBinary(cache)) {
+                return true;
+            }
+        }
+        if (false == this.load(file)) {
+            return false;
+        }
+        if (false == this.saveBinary(cache)) {
+            Util.logWarning("バイナリ形式の辞書を作り直せません %s", cache.getPath());
+        }
+
+        return true;
+    }
+
     private boolean loadExtra(Document doc) {
         for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
             this.loadExtra(doc, extra);
@@ -207,15 +355,7 @@ public final class BrailleDict {
                 this.loadCode(codeNode, info);
 
                 //                this.braileInfoMap.put(elm, info);
-                if (false == this.brailleInfoList.add(info)) {
-                    Set<BrailleInfo> infos = this.brailleInfoList.subSet(info, true, info, true);
-                    for (BrailleInfo b : infos) {
-                        this.brailleInfoList.remove(b);
-                    }
-                    this.brailleInfoList.add(info);
-                }
-
-                this.setMax(info);
+                this.putLoaded(info);
             }
 
             return true;
@@ -225,155 +365,372 @@ public final class BrailleDict {
         }
     }
 
-    private void setMax(BrailleInfo info) {
-        int len = info.getSumiji().length();
-        if (this.maxSumijiLen < len) {
-            this.maxSumijiLen = len;
+    /**
+    * 読み込んだBrailleInfoを登録する<br>
+    * ・同じ墨字が登録済の場合は置き換える
+    *
+    * @param info BrailleInfo
+    */
+    void putLoaded(BrailleInfo info) {
+        if (false == this.addEntry(info)) {
+            this.removeEntry(info);
+            this.addEntry(info);
         }
+    }
 
-        int count = info.getBoxCount();
-        if (this.maxBoxCount < count) {
-            this.maxBoxCount = count;
-        }
+    /**
+    * 登録されているBrailleInfoを墨字の順で取得する<br>
+    * ・上書き辞書の場合は、土台の辞書の内容を含まない
+    *
+    * @return 変更できないBrailleInfoのコレクション
+    */
+    Collection<BrailleInfo> getEntries() {
+        return Collections.unmodifiableCollection(this.brailleInfoList);
+    }
 
-        len = info.getNABCC(true).length();
-        if (this.maxNABCCLen < len) {
-            this.maxNABCCLen = len;
+    /**
+    * BrailleInfoを一覧と索引とに登録する<br>
+    * ・同じ墨字が登録済の場合は何もしない<br>
+    * ・登録したBrailleInfoは変更できなくする
+    *
+    * @param info BrailleInfo
+    * @return true=登録した false=同じ墨字が登録済
+    */
+    private boolean addEntry(BrailleInfo info) {
+        if (false == this.brailleInfoList.add(info)) {
+            return false;
+        }
+        info.freeze();
+        this.sumijiMap.put(info.getSumiji(), info);
+        this.sumijiLenCount.add(info.getSumiji().length());
+        if (this.nabccLenVersion == this.getExtraVersion()) {
+            this.nabccLenCount.add(nabccLength(info));
         }
+        this.boxCountCount.add(info.getBoxCount());
+        if (this.haveBrailleIndex()) {
+            this.addBrailleIndex(info);
+        }
+        this.clearIndex();
+
+        return true;
     }
 
     /**
-    * 墨字の長さの最大値を取得する
+    * 墨字が同じBrailleInfoを一覧と索引とから削除する
     *
-    * @return　墨字の長さ
+    * @param info BrailleInfo
+    * @return true=削除した false=登録されていない
     */
-    public int getMaxSumijiLen() {
-        return this.maxSumijiLen;
+    private boolean removeEntry(BrailleInfo info) {
+        if (false == this.brailleInfoList.remove(info)) {
+            return false;
+        }
+        BrailleInfo removed = this.sumijiMap.remove(info.getSumiji());
+        this.sumijiLenCount.remove(removed.getSumiji().length());
+        if (this.nabccLenVersion == this.getExtraVersion()) {
+            this.nabccLenCount.remove(nabccLength(removed));
+        }
+        this.boxCountCount.remove(removed.getBoxCount());
+        if (this.haveBrailleIndex()) {
+            this.removeBrailleIndex(removed);
+        }
+        this.clearIndex();
+
+        return true;
     }
 
     /**
-    * 点字マスの数の最大値を取得する
-    *
-    * @return マスの数の最大値
+    * スナップショットを捨てる<br>
+    * ・次のcompile()で作り直す
     */
-    public int getMaxBoxCount() {
-        return this.maxBoxCount;
+    private void clearIndex() {
+        if (this.editing) {
+            return;
+        }
+        this.compiled = null;
     }
 
     /**
-    * 符号を含めたNABCCの長さの最大数を取得する
+    * マスの列とNABCCの索引が今の符号で作られているかを確認する<br>
+    * ・上書き辞書の場合は、土台の辞書の符号の変更も含める
     *
-    * @return NABCCの長さの最大数
+    * @return true=作られている false=作り直しが必要
     */
-    public int getMaxNABCCLen() {
-        return maxNABCCLen;
+    private boolean haveBrailleIndex() {
+        return (this.indexExtraVersion == this.getExtraVersion());
     }
 
-    private Element createElement(Document doc, Element chars, BrailleInfo info) {
-        Element elm = XmlUtil.addElement(doc, chars, NAME_CHAR);
-
-        elm.setAttribute(NAME_SUMIJI, info.getSumiji());
+    /**
+    * マスの列とNABCCの索引を作り直す
+    */
+    private void rebuildBrailleIndex() {
+        this.cellIndex.clear();
+        this.nabccIndex.clear();
+        for (BrailleInfo info : this.brailleInfoList) {
+            this.addBrailleIndex(info);
+        }
+        this.indexExtraVersion = this.getExtraVersion();
+    }
 
-        elm.setAttribute(NAME_TYPE, info.getType().name());
+    /**
+    * BrailleInfoをマスの列とNABCCの索引に追加する
+    *
+    * @param info BrailleInfo
+    */
+    private void addBrailleIndex(BrailleInfo info) {
+        if (false == this.haveExtraOf(info)) {
+            return;
+        }
+        addBrailleIndex(this.cellIndex, info.getPackedCells(), info);
+        addBrailleIndex(this.nabccIndex, info.getNABCC(true), info);
+    }
 
-        elm.setAttribute(NAME_POSTCHAR, Boolean.toString(info.isPostChar()));
+    private static void addBrailleIndex(Map<String, TreeSet<BrailleInfo>> index, String key, BrailleInfo info) {
+        if (null == key) {
+            return;
+        }
+        TreeSet<BrailleInfo> set = index.get(key);
+        if (null == set) {
+            set = Util.newTreeSet(comparator);
+            index.put(key, set);
+        }
+        set.add(info);
+    }
 
-        elm.setAttribute(NAME_NABCC, info.getNABCC(false));
+    /**
+    * BrailleInfoをマスの列とNABCCの索引から削除する<br>
+    * ・キーは追加したときと同じ符号で求める
+    *
+    * @param info BrailleInfo
+    */
+    private void removeBrailleIndex(BrailleInfo info) {
+        if (false == this.haveExtraOf(info)) {
+            return;
+        }
+        removeBrailleIndex(this.cellIndex, info.getPackedCells(), info);
+        removeBrailleIndex(this.nabccIndex, info.getNABCC(true), info);
+    }
 
-        if (null != info.getDesc() && false == info.getDesc().isEmpty()) {
-            elm.setAttribute(NAME_DESC, info.getDesc());
+    private static void removeBrailleIndex(Map<String, TreeSet<BrailleInfo>> index, String key, BrailleInfo info) {
+        if (null == key) {
+            return;
+        }
+        TreeSet<BrailleInfo> set = index.get(key);
+        if (null != set) {
+            set.remove(info);
+            if (set.isEmpty()) {
+                index.remove(key);
+            }
         }
+    }
 
-        Element braile = XmlUtil.addElement(doc, elm, NAME_BRAILE);
+    /**
+    * BrailleInfoが持つ符号が全て登録されているかを確認する<br>
+    * ・上書き辞書の場合は、土台の辞書の符号も含める
+    *
+    * @param info BrailleInfo
+    * @return true=登録されている false=登録されていない符号がある
+    */
+    private boolean haveExtraOf(BrailleInfo info) {
         for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
-            if (info.haveExtra(extra)) {
-                braile.setAttribute(BrailleDict.extraNameMap.get(extra), "true");
+            if (info.haveExtra(extra) && null == this.getExtra(extra)) {
+                return false;
             }
         }
 
-        for (BrailleInfo.CHECK check : BrailleInfo.CHECK.values()) {
-            if (info.needCheck(check)) {
-                braile.setAttribute(BrailleDict.checkNameMap.get(check), "true");
+        return true;
+    }
+
+    /**
+    * マスの列かNABCCをキーにして、上書き辞書から土台の辞書の順に検索する<br>
+    * ・各辞書では、キーが同じBrailleInfoのうち墨字の順で最初のものを見る。
+    * それが上の辞書と同じ墨字の場合は、その辞書では見つからないとみなす(CompiledBrailleDictと同じ)
+    *
+    * @param key キー
+    * @param byCells true=マスの列 false=NABCC
+    * @return 見つからない場合はnull
+    */
+    private BrailleInfo findBraille(String key, boolean byCells) {
+        for (BrailleDict layer = this; null != layer; layer = layer.base) {
+            if (false == layer.haveBrailleIndex()) {
+                layer.rebuildBrailleIndex();
+            }
+            TreeSet<BrailleInfo> set = (byCells ? layer.cellIndex : layer.nabccIndex).get(key);
+            if (null != set && false == this.isShadowed(set.first().getSumiji(), layer)) {
+                return set.first();
             }
         }
 
-        this.storeDots(doc, braile, info);
+        return null;
+    }
 
-        return elm;
+    /**
+    * 墨字が、layerより上の辞書に登録されているかを確認する
+    *
+    * @param sumiji 墨字
+    * @param layer thisか、その土台の辞書
+    * @return true=上の辞書に登録されている false=登録されていない
+    */
+    private boolean isShadowed(String sumiji, BrailleDict layer) {
+        for (BrailleDict upper = this; upper != layer; upper = upper.base) {
+            if (upper.sumijiMap.containsKey(sumiji)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
-    * 辞書をファイルに書き出す<br>
-    * ・例外が起きた場合はUtil.logでログ出力する
+    * 符号を含めたNABCCの長さを、文字列を作らずに求める<br>
+    * ・登録されていない符号は長さ0とみなす
     *
-    * @param file 辞書ファイル
-    * @return true=成功 false=失敗
+    * @param info BrailleInfo
+    * @return NABCCの長さ
     */
-    public boolean save(File file) {
-        try {
-            Document doc = XmlUtil.createDocument(null, NAME_DICT);
+    private static int nabccLength(BrailleInfo info) {
+        int len = info.getNABCC(false).length();
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            if (info.haveExtra(extra)) {
+                BrailleInfo extraInfo = info.getExtra(extra);
+                if (null != extraInfo) {
+                    len += extraInfo.getNABCC(false).length();
+                }
+            }
+        }
 
-            this.storeExtra(doc);
+        return len;
+    }
 
-            Element chars = XmlUtil.addElement(doc, doc.getDocumentElement(), NAME_CHARS);
+    /**
+    * 符号が変わったので、NABCCの長さを数え直す
+    */
+    private void extraChanged() {
+        if (this.editing) {
+            this.extraChanged = true;
+            return;
+        }
+        this.nabccLenCount();
+        this.clearIndex();
+    }
 
+    /**
+    * 符号を含めたNABCCの長さの件数を取得する<br>
+    * ・数えた後に、この辞書か土台の辞書の符号が変わっていたら数え直す<br>
+    * ・まとめて変更している間は数え直さない
+    *
+    * @return NABCCの長さの件数
+    */
+    private LengthHistogram nabccLenCount() {
+        int version = this.getExtraVersion();
+        if (false == this.editing && this.nabccLenVersion != version) {
+            this.nabccLenCount.clear();
             for (BrailleInfo info : this.brailleInfoList) {
-                this.createElement(doc, chars, info);
+                this.nabccLenCount.add(nabccLength(info));
             }
-
-            XmlUtil.write(doc, file);
-        } catch (Exception ex) {
-            Util.logException(ex);
-            return false;
+            this.nabccLenVersion = version;
         }
 
-        return true;
+        return this.nabccLenCount;
     }
 
-    private void storeDots(Document doc, Element parent, BrailleInfo info) {
-        int nDotList = info.getBoxCount();
-        StringBuilder dotText = new StringBuilder();
-        for (int i = 0; i < nDotList; i++) {
-            Element code = XmlUtil.addElement(doc, parent, NAME_CODE);
+    /**
+    * 索引を作り終えた辞書のスナップショットを取得する<br>
+    * ・登録内容が変わっていなければ、前回のスナップショットを返す<br>
+    * ・スナップショットは変更されないので、複数のスレッドで共有できる<br>
+    * ・上書き辞書の場合は、土台の辞書のスナップショットを共有して重ねる。土台の辞書が変わった場合も作り直す<br>
+    * ・辞書の変更とcompile()とは同じスレッドで行うこと
+    *
+    * @return スナップショット
+    */
+    public CompiledBrailleDict compile() {
+        CompiledBrailleDict baseSnapshot = (null == this.base ? null : this.base.compile());
+        CompiledBrailleDict snapshot = this.compiled;
+        if (null == snapshot || baseSnapshot != snapshot.getBase()) {
+            snapshot = new CompiledBrailleDict(this, baseSnapshot, this.brailleInfoList, this.extraMap,
+                    this.sumijiLenCount.getMax(), this.boxCountCount.getMax(), this.nabccLenCount().getMax());
+            this.compiled = snapshot;
+        }
 
-            int[] dots = info.getBox(i);
-            dotText.delete(0, dotText.length());
-            for (int dot : dots) {
-                if (0 < dotText.length()) {
-                    dotText.append(DOT_SEPARATOR);
-                }
-                dotText.append(dot);
-            }
+        return snapshot;
+    }
 
-            code.setAttribute(NAME_INDEX, Integer.toString(i + 1));
-            code.setTextContent(dotText.toString());
+    /**
+    * 墨字の長さの最大値を取得する<br>
+    * ・上書き辞書の場合は、土台の辞書を含めた最大値
+    *
+    * @return　墨字の長さ
+    */
+    public int getMaxSumijiLen() {
+        if (null != this.base) {
+            return Math.max(this.sumijiLenCount.getMax(), this.base.getMaxSumijiLen());
         }
+        return this.sumijiLenCount.getMax();
     }
 
-    private void storeExtra(Document doc) {
-        Element elm = doc.createElement(NAME_EXTRA);
-        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
-            this.storeExtra(doc, elm, extra);
-        }
-        if (0 < elm.getChildNodes().getLength()) {
-            doc.getDocumentElement().appendChild(elm);
+    /**
+    * 点字マスの数の最大値を取得する<br>
+    * ・上書き辞書の場合は、土台の辞書を含めた最大値
+    *
+    * @return マスの数の最大値
+    */
+    public int getMaxBoxCount() {
+        if (null != this.base) {
+            return Math.max(this.boxCountCount.getMax(), this.base.getMaxBoxCount());
         }
+        return this.boxCountCount.getMax();
     }
 
-    private boolean storeExtra(Document doc, Element parent, BrailleInfo.EXTRA extra) {
-        BrailleInfo info = this.getExtra(extra);
-        if (null == info) {
-            return true;
+    /**
+    * 符号を含めたNABCCの長さの最大数を取得する<br>
+    * ・上書き辞書の場合は、土台の辞書を含めた最大値
+    *
+    * @return NABCCの長さの最大数
+    */
+    public int getMaxNABCCLen() {
+        if (null != this.base) {
+            return Math.max(this.nabccLenCount().getMax(), this.base.getMaxNABCCLen());
         }
-        Element elm = XmlUtil.addElement(doc, parent, BrailleDict.extraNameMap.get(extra));
-
-        elm.setAttribute(NAME_TYPE, info.getType().name());
+        return this.nabccLenCount().getMax();
+    }
 
-        elm.setAttribute(NAME_POSTCHAR, Boolean.toString(info.isPostChar()));
+    /**
+    * 辞書をファイルに書き出す<br>
+    * ・DOMを作らずに書き出す<br>
+    * ・上書き辞書の場合は、上書き辞書の内容だけを書き出す<br>
+    * ・一時ファイルに書いてから置き換えるので、途中で失敗しても元のファイルは壊れない<br>
+    * ・例外が起きた場合はUtil.logでログ出力する
+    *
+    * @param file 辞書ファイル
+    * @return true=成功 false=失敗
+    */
+    public boolean save(File file) {
+        try {
+            BrailleDictWriter.write(file, this);
+        } catch (Exception ex) {
+            Util.logException(ex);
+            return false;
+        }
 
-        elm.setAttribute(NAME_NABCC, info.getNABCC(false));
+        return true;
+    }
 
-        this.storeDots(doc, elm, info);
+    /**
+    * 辞書をバイナリ形式でファイルに書き出す<br>
+    * ・上書き辞書の場合は、上書き辞書の内容だけを書き出す。土台のない辞書の場合は、索引も書き出す<br>
+    * ・一時ファイルに書いてから置き換えるので、途中で失敗しても元のファイルは壊れない<br>
+    * ・例外が起きた場合はUtil.logでログ出力する
+    *
+    * @param file バイナリ形式の辞書ファイル
+    * @return true=成功 false=失敗
+    */
+    public boolean saveBinary(File file) {
+        try {
+            BrailleDictBinary.write(file, this);
+        } catch (Exception ex) {
+            Util.logException(ex);
+            return false;
+        }
 
         return true;
     }
@@ -393,42 +750,79 @@ public final class BrailleDict {
     }
 
     /**
-    * 外字符、大文字符などの符号のBrileInfoを辞書から取得する
+    * 外字符、大文字符などの符号のBrileInfoを辞書から取得する<br>
+    * ・上書き辞書に登録されていない場合は、土台の辞書から取得する
     *
     * @param extra 符号
     * @return BraillleInfo
     */
     public BrailleInfo getExtra(BrailleInfo.EXTRA extra) {
+        BrailleInfo info = this.extraMap.get(extra);
+        if (null == info && null != this.base) {
+            return this.base.getExtra(extra);
+        }
+        return info;
+    }
+
+    /**
+    * 符号の版数を取得する<br>
+    * ・上書き辞書の場合は、土台の辞書の符号の変更も含める
+    *
+    * @return 符号の版数
+    */
+    int getExtraVersion() {
+        if (null != this.base) {
+            return this.extraVersion + this.base.getExtraVersion();
+        }
+        return this.extraVersion;
+    }
+
+    /**
+    * この辞書に登録されている符号のBrailleInfoを取得する<br>
+    * ・土台の辞書は検索しない
+    *
+    * @param extra 符号
+    * @return BrailleInfo 登録されていない場合はnull
+    */
+    BrailleInfo getOwnExtra(BrailleInfo.EXTRA extra) {
         return this.extraMap.get(extra);
     }
 
     /**
     * 外字符、大文字付などの符号のBrailleInfoを辞書に登録する<br>
-    * ・既に登録されている場合は置き換える
+    * ・既に登録されている場合は置き換える<br>
+    * ・登録したBrailleInfoは変更できなくなる
     *
     * @param extra 符号
     * @param info BrailleInfo
     */
     public void setExtra(BrailleInfo.EXTRA extra, BrailleInfo info) {
+        info.freeze();
         this.extraMap.put(extra, info);
+        this.extraVersion++;
+        this.extraChanged();
     }
 
     /**
-    * 外字符、大文字付などの符号を辞書から削除する
+    * 外字符、大文字付などの符号を辞書から削除する<br>
+    * ・上書き辞書の場合は、上書き辞書の符号だけを削除する
     *
     * @param extra 符号
     */
     public void delExtra(BrailleInfo.EXTRA extra) {
         this.extraMap.remove(extra);
+        this.extraVersion++;
+        this.extraChanged();
     }
 
     /**
-    * 登録されている墨字のリストを取得する
+    * 登録されている墨字のリストを取得する<br>
+    * ・上書き辞書の場合は、土台の辞書の墨字を含む
     *
     * @return 墨字のリスト
     */
     public TreeSet<String> getSumijiList() {
-        TreeSet<String> list = Util.newTreeSet();
+        TreeSet<String> list = (null == this.base ? Util.<String> newTreeSet() : this.base.getSumijiList());
         for (BrailleInfo info : this.brailleInfoList) {
             list.add(info.getSumiji());
         }
@@ -450,32 +844,30 @@ public final class BrailleDict {
 
     /**
     * BrailleInfoを検索する<br>
-    * ・符号を指定した場合は、符号を持つBrailleInfoだけを検索する
+    * ・符号を指定した場合は、符号を持つBrailleInfoだけを検索する<br>
+    * ・上書き辞書に登録されていない墨字は、土台の辞書から検索する
     *
     * @param sumiji 墨字
     * @param extras 符号
     * @return BrailleInfo 見つからない場合はBrailleInfo.SPACE
     */
     public BrailleInfo getBrailleInfo(String sumiji, BrailleInfo.EXTRA... extras) {
-        for (BrailleInfo info : this.brailleInfoList) {
-            if (null != extras) {
-                boolean flag = false;
-                for (BrailleInfo.EXTRA extra : extras) {
-                    if (false == info.haveExtra(extra)) {
-                        flag = true;
-                        break;
-                    }
-                }
-                if (flag) {
-                    continue;
-                }
+        BrailleInfo info = this.sumijiMap.get(sumiji);
+        if (null == info) {
+            if (null != this.base) {
+                return this.base.getBrailleInfo(sumiji, extras);
             }
-            if (sumiji.equals(info.getSumiji())) {
-                return info;
+            return BrailleInfo.SPACE;
+        }
+        if (null != extras) {
+            for (BrailleInfo.EXTRA extra : extras) {
+                if (false == info.haveExtra(extra)) {
+                    return BrailleInfo.SPACE;
+                }
             }
         }
 
-        return BrailleInfo.SPACE;
+        return info;
     }
 
     /**
@@ -509,74 +901,31 @@ public final class BrailleDict {
     }
 
     /**
-    * 点字マスからBrailleInfoを検索する
+    * 点字マスからBrailleInfoを検索する<br>
+    * ・登録と削除のたびに更新する索引で検索するので、辞書を変更した後もスナップショットを作り直さない<br>
+    * ・点の番号が範囲外のマスを含む場合は見つからない
     *
     * @param boxList 点字マスのリスト
-    * @return BrailleInfo
+    * @return BrailleInfo 見つからない場合はnull
     */
     public BrailleInfo getBraille(List<BrailleBox> boxList) {
-        //        for (BrailleInfo info: this.braileInfoMap.values())
-        for (BrailleInfo info : this.brailleInfoList) {
-            // 符号を比較
-            int nExtra = 0;
-            boolean flag = true;
-            for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
-                if (info.haveExtra(extra)) {
-                    BrailleInfo e = this.getExtra(extra);
-                    for (int i = 0; i < e.getBoxCount(); i++) {
-                        int[] s = boxList.get(i).getDots();
-                        int[] c = e.getBox(i);
-                        if (false == Arrays.equals(s, c)) {
-                            flag = false;
-                            break;
-                        }
-                    }
-                    if (flag) {
-                        nExtra++;
-                    } else {
-                        break;
-                    }
-                }
-            }
-            if (false == flag) // 符号が違う
-            {
-                continue;
-            }
-            // 本体を比較
-            if (info.getBoxCount() == (boxList.size() - nExtra)) {
-                for (int i = nExtra; i < boxList.size(); i++) {
-                    int[] s = boxList.get(i).getDots();
-                    int[] c = info.getBox(i - nExtra);
-                    if (false == Arrays.equals(s, c)) {
-                        flag = false;
-                        break;
-                    }
-                }
-                if (flag) {
-                    return info;
-                }
-            }
+        StringBuilder cells = new StringBuilder(boxList.size());
+        for (BrailleBox box : boxList) {
+            cells.append(BrailleInfo.packCell(box.getDots()));
         }
 
-        return null;
+        return this.findBraille(cells.toString(), true);
     }
 
     /**
-    * 符号を含めたNABCCからBrailleInfoを検索する
+    * 符号を含めたNABCCからBrailleInfoを検索する<br>
+    * ・登録と削除のたびに更新する索引で検索するので、辞書を変更した後もスナップショットを作り直さない
     *
     * @param nabcc NABCC
     * @return 見つからない場合はnull
     */
     public BrailleInfo getBraille(String nabcc) {
-        for (BrailleInfo info : this.brailleInfoList) {
-            String n = info.getNABCC(true);
-
-            if (nabcc.equals(n)) {
-                return info;
-            }
-        }
-
-        return null;
+        return this.findBraille(nabcc, false);
     }
 
     /**
@@ -589,39 +938,267 @@ public final class BrailleDict {
     * @return true/false
     */
     public boolean replaceBrailleInfo(BrailleInfo oldInfo, BrailleInfo newInfo) {
-        if (null == oldInfo || false == this.brailleInfoList.contains(oldInfo)) {
-            this.brailleInfoList.add(newInfo);
-        } else if (this.brailleInfoList.contains(oldInfo)) {
-            this.brailleInfoList.remove(oldInfo);
-            this.brailleInfoList.add(newInfo);
+        if (null != oldInfo) {
+            this.removeEntry(oldInfo);
         }
-
-        this.setMax(newInfo);
+        this.addEntry(newInfo);
 
         return true;
     }
 
     /**
     * BrailleInfoを削除する<br>
-    * ・符号を指定した場合は、符号を持つBrailleInfoを削除する
+    * ・符号を指定した場合は、符号を持つBrailleInfoを削除する<br>
+    * ・上書き辞書の場合は、上書き辞書のBrailleInfoだけを削除する
     *
     * @param sumiji 墨字
     * @param extras 符号
     * @return true=成功 false=失敗
     */
     public boolean delBrailleInfo(String sumiji, BrailleInfo.EXTRA... extras) {
-        BrailleInfo b = this.getBrailleInfo(sumiji, extras);
-        if (b != BrailleInfo.SPACE) {
-            this.brailleInfoList.remove(b);
+        BrailleInfo b = this.sumijiMap.get(sumiji);
+        if (null == b) {
+            return true;
         }
-
-        this.maxSumijiLen = 0;
-        this.maxBoxCount = 0;
-        this.maxNABCCLen = 0;
-        for (BrailleInfo info : this.brailleInfoList) {
-            this.setMax(info);
+        if (null != extras) {
+            for (BrailleInfo.EXTRA extra : extras) {
+                if (false == b.haveExtra(extra)) {
+                    return true;
+                }
+            }
         }
+        this.removeEntry(b);
 
         return true;
     }
+
+    private enum OP {
+        ADD, REPLACE, DELETE, SET_EXTRA, DEL_EXTRA
+    }
+
+    /**
+    * Editorに溜めた1件の変更
+    */
+    private static final class Op {
+        final OP op;
+        final BrailleInfo oldInfo;
+        final BrailleInfo info;
+        final String sumiji;
+        final BrailleInfo.EXTRA extra;
+        final BrailleInfo.EXTRA[] extras;
+
+        Op(OP op, BrailleInfo oldInfo, BrailleInfo info, String sumiji, BrailleInfo.EXTRA extra,
+                BrailleInfo.EXTRA[] extras) {
+            this.op = op;
+            this.oldInfo = oldInfo;
+            this.info = info;
+            this.sumiji = sumiji;
+            this.extra = extra;
+            this.extras = extras;
+        }
+    }
+
+    /**
+    * 辞書をまとめて変更するEditorを取得する<br>
+    * ・Editorに追加した変更は、commit()でまとめて辞書に反映する
+    *
+    * @return Editor
+    */
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+    * 辞書をまとめて変更する<br>
+    * ・追加、置き換え、削除、符号の変更を溜めておき、commit()で順に反映する<br>
+    * ・反映している間は索引を捨てず、NABCCの長さも数え直さず、最後に1回だけ行う<br>
+    * ・辞書と同じスレッドで使うこと
+    *
+    * @author DSSP/Minoru Yagi
+    *
+    */
+    public final class Editor {
+        private final List<Op> ops = Util.newArrayList();
+
+        private Editor() {
+        }
+
+        /**
+        * BrailleInfoを追加する<br>
+        * ・同じ墨字が登録済の場合は追加しない
+        *
+        * @param info BrailleInfo
+        * @return this
+        */
+        public Editor add(BrailleInfo info) {
+            this.ops.add(new Op(OP.ADD, null, info, null, null, null));
+            return this;
+        }
+
+        /**
+        * BrailleInfoを置き換える<br>
+        * ・replaceBrailleInfo()と同じ
+        *
+        * @param oldInfo 置き換えられるBrailleInfo
+        * @param newInfo 置き換えるBrailleInfo
+        * @return this
+        */
+        public Editor replace(BrailleInfo oldInfo, BrailleInfo newInfo) {
+            this.ops.add(new Op(OP.REPLACE, oldInfo, newInfo, null, null, null));
+            return this;
+        }
+
+        /**
+        * BrailleInfoを削除する<br>
+        * ・delBrailleInfo()と同じ
+        *
+        * @param sumiji 墨字
+        * @param extras 符号
+        * @return this
+        */
+        public Editor delete(String sumiji, BrailleInfo.EXTRA... extras) {
+            this.ops.add(new Op(OP.DELETE, null, null, sumiji, null, extras));
+            return this;
+        }
+
+        /**
+        * 符号を登録する<br>
+        * ・setExtra()と同じ
+        *
+        * @param extra 符号
+        * @param info BrailleInfo
+        * @return this
+        */
+        public Editor setExtra(BrailleInfo.EXTRA extra, BrailleInfo info) {
+            this.ops.add(new Op(OP.SET_EXTRA, null, info, null, extra, null));
+            return this;
+        }
+
+        /**
+        * 符号を削除する<br>
+        * ・delExtra()と同じ
+        *
+        * @param extra 符号
+        * @return this
+        */
+        public Editor delExtra(BrailleInfo.EXTRA extra) {
+            this.ops.add(new Op(OP.DEL_EXTRA, null, null, null, extra, null));
+            return this;
+        }
+
+        /**
+        * 溜めた変更を捨てる
+        */
+        public void cancel() {
+            this.ops.clear();
+        }
+
+        /**
+        * 溜めた変更を順に辞書に反映する<br>
+        * ・反映する前に全ての変更を確かめ、反映できない変更がある場合は何も反映せずに例外を投げる。
+        * その場合、溜めた変更は残るので、cancel()で捨てる<br>
+        * ・反映した変更は捨てるので、続けて次の変更を溜められる
+        *
+        * @return 反映した変更の数
+        * @throws IllegalArgumentException 反映できない変更がある場合
+        */
+        public int commit() {
+            this.validate();
+
+            BrailleDict dict = BrailleDict.this;
+            int count = this.ops.size();
+            if (0 == count) {
+                return 0;
+            }
+            dict.editing = true;
+            try {
+                for (Op op : this.ops) {
+                    switch (op.op) {
+                    case ADD:
+                        dict.addEntry(op.info);
+                        break;
+                    case REPLACE:
+                        dict.replaceBrailleInfo(op.oldInfo, op.info);
+                        break;
+                    case DELETE:
+                        dict.delBrailleInfo(op.sumiji, op.extras);
+                        break;
+                    case SET_EXTRA:
+                        dict.setExtra(op.extra, op.info);
+                        break;
+                    case DEL_EXTRA:
+                        dict.delExtra(op.extra);
+                        break;
+                    }
+                }
+            } finally {
+                this.ops.clear();
+                dict.editing = false;
+                if (dict.extraChanged) {
+                    dict.extraChanged = false;
+                    dict.extraChanged();
+                }
+                dict.clearIndex();
+            }
+
+            return count;
+        }
+
+        /**
+        * 溜めた変更が全て反映できるかを、辞書を変更する前に確かめる<br>
+        * ・反映の途中で例外が起きて、一部の変更だけが反映されるのを防ぐ
+        *
+        * @throws IllegalArgumentException 反映できない変更がある場合
+        */
+        private void validate() {
+            for (int i = 0; i < this.ops.size(); i++) {
+                Op op = this.ops.get(i);
+                switch (op.op) {
+                case ADD:
+                    this.validateInfo(i, op.info);
+                    break;
+                case REPLACE:
+                    if (null != op.oldInfo && null == op.oldInfo.getSumiji()) {
+                        throw invalid(i, "置き換えられるBrailleInfoの墨字");
+                    }
+                    this.validateInfo(i, op.info);
+                    break;
+                case SET_EXTRA:
+                    if (null == op.extra) {
+                        throw invalid(i, "符号");
+                    }
+                    if (null == op.info) {
+                        throw invalid(i, "BrailleInfo");
+                    }
+                    if (null == op.info.getNABCC(false)) {
+                        throw invalid(i, "BrailleInfoのNABCC");
+                    }
+                    break;
+                case DEL_EXTRA:
+                    if (null == op.extra) {
+                        throw invalid(i, "符号");
+                    }
+                    break;
+                case DELETE:
+                    break;
+                }
+            }
+        }
+
+        private void validateInfo(int index, BrailleInfo info) {
+            if (null == info) {
+                throw invalid(index, "BrailleInfo");
+            }
+            if (null == info.getSumiji()) {
+                throw invalid(index, "BrailleInfoの墨字");
+            }
+            if (null == info.getNABCC(false)) {
+                throw invalid(index, "BrailleInfoのNABCC");
+            }
+        }
+
+        private IllegalArgumentException invalid(int index, String name) {
+            return new IllegalArgumentException(String.format("%d番目の変更の%sがnull", index + 1, name));
+        }
+    }
 }
@@ -0,0 +1,407 @@
+package dssp.brailleLib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * 辞書のバイナリ形式<br>
+ * ・XML形式の辞書のキャッシュとして使う<br>
+ * ・文字列は文字列表に、マスは点のパック値(1マス1バイト)の列にまとめ、それぞれ1回で読む<br>
+ * ・BrailleInfoは墨字の順で書く。読み込み時に全て生成し、マスは1回でまとめて設定する<br>
+ * ・土台のない辞書は、スナップショットの索引(墨字、マスの列、NABCCの索引表と前置木)も書く。
+ * 土台がなく空の辞書に読み込む場合は、その索引からスナップショットを作り、索引を作り直さない<br>
+ * ・同じフォルダの一時ファイルに書いてから置き換えるので、途中で失敗しても元のファイルは壊れない
+ *
+ * <pre>
+ * int MAGIC, int VERSION
+ * int 文字列の数N, int[N+1] 文字列の開始位置, char[全文字数]
+ * int マスの列のバイト数, byte[マスの列のバイト数]
+ * int 符号の数, (byte EXTRAの番号, 項目)...
+ * int BrailleInfoの数, 項目...
+ * byte 索引があるか, (索引)
+ * int MAGIC
+ *
+ * 項目: int 墨字, int NABCC, int 説明(文字列表の番号), byte TYPEの番号, byte 後置文字か,
+ *       byte 符号のビット, byte 確認のビット, int マスの列の開始位置, short マスの数
+ * 索引: int 符号を含めたマスの数の最大値, byte 改行を含む墨字があるか,
+ *       索引表(墨字、マスの列、NABCC), 前置木(墨字、マスの列、符号が続く範囲ごとのマスの列、NABCC)
+ * 索引表: int 件数, (int キー(文字列表の番号), int BrailleInfoの番号)...
+ * 前置木: PrefixTrie.write()の形式(値はBrailleInfoの番号)
+ * </pre>
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+final class BrailleDictBinary {
+    private static final int MAGIC = 0x42444943;
+    private static final int VERSION = 2;
+
+    private BrailleDictBinary() {
+    }
+
+    /**
+    * 辞書をバイナリ形式で書き出す<br>
+    * ・土台のない辞書は、compile()したスナップショットの索引も書く
+    *
+    * @param file ファイル
+    * @param dict 辞書
+    * @throws IOException 書き込みに失敗した場合
+    */
+    static void write(File file, BrailleDict dict) throws IOException {
+        CompiledBrailleDict.Index index = (null == dict.getBase() ? dict.compile().getIndex() : null);
+
+        Map<String, Integer> stringMap = Util.newHashMap();
+        List<String> stringList = Util.newArrayList();
+        EnumMap<BrailleInfo.EXTRA, BrailleInfo> extraMap = new EnumMap<BrailleInfo.EXTRA, BrailleInfo>(
+                BrailleInfo.EXTRA.class);
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            BrailleInfo info = dict.getOwnExtra(extra);
+            if (null != info) {
+                extraMap.put(extra, info);
+                addStrings(info, stringMap, stringList);
+            }
+        }
+        final Map<BrailleInfo, Integer> infoIndex = new IdentityHashMap<BrailleInfo, Integer>();
+        for (BrailleInfo info : dict.getEntries()) {
+            addStrings(info, stringMap, stringList);
+            infoIndex.put(info, infoIndex.size());
+        }
+        if (null != index) {
+            for (Map<String, BrailleInfo> map : indexMaps(index)) {
+                for (String key : map.keySet()) {
+                    addString(key, stringMap, stringList);
+                }
+            }
+        }
+
+        // マスの列は、符号、BrailleInfoの順に続ける
+        ByteArrayOutputStream cells = new ByteArrayOutputStream();
+        for (BrailleInfo info : extraMap.values()) {
+            addCells(info, cells);
+        }
+        for (BrailleInfo info : dict.getEntries()) {
+            addCells(info, cells);
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                out.writeInt(stringList.size());
+                int offset = 0;
+                out.writeInt(offset);
+                for (String text : stringList) {
+                    offset += text.length();
+                    out.writeInt(offset);
+                }
+                for (String text : stringList) {
+                    out.writeChars(text);
+                }
+
+                out.writeInt(cells.size());
+                cells.writeTo(out);
+
+                int cellOffset = 0;
+                out.writeInt(extraMap.size());
+                for (Map.Entry<BrailleInfo.EXTRA, BrailleInfo> entry : extraMap.entrySet()) {
+                    out.writeByte(entry.getKey().ordinal());
+                    cellOffset = writeInfo(out, entry.getValue(), stringMap, cellOffset);
+                }
+
+                out.writeInt(dict.getEntries().size());
+                for (BrailleInfo info : dict.getEntries()) {
+                    cellOffset = writeInfo(out, info, stringMap, cellOffset);
+                }
+
+                out.writeByte(null == index ? 0 : 1);
+                if (null != index) {
+                    writeIndex(out, index, stringMap, infoIndex);
+                }
+
+                out.writeInt(MAGIC);
+                out.flush();
+                channel.force(true);
+            }
+
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+    * 索引の索引表(墨字、マスの列、NABCCの順)
+    */
+    private static List<Map<String, BrailleInfo>> indexMaps(CompiledBrailleDict.Index index) {
+        List<Map<String, BrailleInfo>> maps = Util.newArrayList();
+        maps.add(index.sumijiMap);
+        maps.add(index.cellMap);
+        maps.add(index.nabccMap);
+
+        return maps;
+    }
+
+    private static void addStrings(BrailleInfo info, Map<String, Integer> stringMap, List<String> stringList) {
+        for (String text : new String[] { info.getSumiji(), info.getNABCC(false), info.getDesc() }) {
+            addString(text, stringMap, stringList);
+        }
+    }
+
+    private static void addString(String text, Map<String, Integer> stringMap, List<String> stringList) {
+        String key = (null == text ? "" : text);
+        if (false == stringMap.containsKey(key)) {
+            stringMap.put(key, stringList.size());
+            stringList.add(key);
+        }
+    }
+
+    private static int stringIndex(String text, Map<String, Integer> stringMap) {
+        return stringMap.get(null == text ? "" : text);
+    }
+
+    private static void addCells(BrailleInfo info, ByteArrayOutputStream cells) {
+        for (int i = 0; i < info.getBoxCount(); i++) {
+            cells.write(info.getPackedBox(i));
+        }
+    }
+
+    /**
+    * 項目を書く
+    *
+    * @return 次の項目のマスの列の開始位置
+    */
+    private static int writeInfo(DataOutputStream out, BrailleInfo info, Map<String, Integer> stringMap,
+            int cellOffset) throws IOException {
+        out.writeInt(stringIndex(info.getSumiji(), stringMap));
+        out.writeInt(stringIndex(info.getNABCC(false), stringMap));
+        out.writeInt(stringIndex(info.getDesc(), stringMap));
+        out.writeByte(info.getType().ordinal());
+        out.writeByte(info.isPostChar() ? 1 : 0);
+
+        int extras = 0;
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            if (info.haveExtra(extra)) {
+                extras |= (1 << extra.ordinal());
+            }
+        }
+        out.writeByte(extras);
+
+        int checks = 0;
+        for (BrailleInfo.CHECK check : BrailleInfo.CHECK.values()) {
+            if (info.needCheck(check)) {
+                checks |= (1 << check.ordinal());
+            }
+        }
+        out.writeByte(checks);
+
+        out.writeInt(cellOffset);
+        out.writeShort(info.getBoxCount());
+
+        return cellOffset + info.getBoxCount();
+    }
+
+    private static void writeIndex(DataOutputStream out, CompiledBrailleDict.Index index,
+            Map<String, Integer> stringMap, final Map<BrailleInfo, Integer> infoIndex) throws IOException {
+        out.writeInt(index.maxCellLen);
+        out.writeByte(index.lineBreakSumiji ? 1 : 0);
+
+        for (Map<String, BrailleInfo> map : indexMaps(index)) {
+            out.writeInt(map.size());
+            for (Map.Entry<String, BrailleInfo> entry : map.entrySet()) {
+                out.writeInt(stringIndex(entry.getKey(), stringMap));
+                out.writeInt(infoNumber(entry.getValue(), infoIndex));
+            }
+        }
+
+        ToIntFunction<BrailleInfo> valueIndex = new ToIntFunction<BrailleInfo>() {
+            @Override
+            public int applyAsInt(BrailleInfo info) {
+                return infoNumber(info, infoIndex);
+            }
+        };
+        index.sumijiTrie.write(out, valueIndex);
+        index.cellTrie.write(out, valueIndex);
+        for (Set<BrailleInfo.EXTRA> run : CompiledBrailleDict.getRuns()) {
+            index.runTries.get(run).write(out, valueIndex);
+        }
+        index.nabccTrie.write(out, valueIndex);
+    }
+
+    private static int infoNumber(BrailleInfo info, Map<BrailleInfo, Integer> infoIndex) {
+        Integer number = infoIndex.get(info);
+        if (null == number) {
+            throw new IllegalStateException(String.format("索引に辞書にないBrailleInfoがある %s", info.getSumiji()));
+        }
+
+        return number;
+    }
+
+    /**
+    * バイナリ形式の辞書を読み込む<br>
+    * ・全て読み終えてから辞書に登録するので、失敗した場合は辞書を変更しない<br>
+    * ・BrailleInfoは全て生成して辞書に登録する
+    *
+    * @param file ファイル
+    * @param dict 辞書
+    * @return 読み込んだ索引 土台がなく空の辞書に読み込んだ場合だけで、それ以外、ファイルに索引がない場合はnull
+    * @throws IOException 読み込みに失敗した場合、形式が違う場合
+    */
+    static CompiledBrailleDict.Index read(File file, BrailleDict dict) throws IOException {
+        boolean fresh = (null == dict.getBase() && dict.getEntries().isEmpty());
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            fresh = (fresh && null == dict.getOwnExtra(extra));
+        }
+
+        EnumMap<BrailleInfo.EXTRA, BrailleInfo> extraMap = new EnumMap<BrailleInfo.EXTRA, BrailleInfo>(
+                BrailleInfo.EXTRA.class);
+        List<BrailleInfo> infoList;
+        CompiledBrailleDict.Index index = null;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (MAGIC != buf.getInt() || VERSION != buf.getInt()) {
+                throw new IOException(String.format("バイナリ形式の辞書ではありません %s", file.getPath()));
+            }
+
+            int[] offsets = new int[buf.getInt() + 1];
+            buf.asIntBuffer().get(offsets);
+            buf.position(buf.position() + offsets.length * 4);
+            char[] chars = new char[offsets[offsets.length - 1]];
+            buf.asCharBuffer().get(chars);
+            buf.position(buf.position() + chars.length * 2);
+            String[] strings = new String[offsets.length - 1];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = new String(chars, offsets[i], offsets[i + 1] - offsets[i]);
+            }
+
+            byte[] cells = new byte[buf.getInt()];
+            buf.get(cells);
+
+            BrailleInfo.EXTRA[] extras = BrailleInfo.EXTRA.values();
+            int nExtra = buf.getInt();
+            for (int i = 0; i < nExtra; i++) {
+                BrailleInfo.EXTRA extra = extras[buf.get()];
+                extraMap.put(extra, readInfo(buf, dict, strings, cells));
+            }
+
+            int nInfo = buf.getInt();
+            infoList = Util.newArrayList();
+            for (int i = 0; i < nInfo; i++) {
+                infoList.add(readInfo(buf, dict, strings, cells));
+            }
+
+            if (0 != buf.get()) {
+                index = readIndex(buf, strings, infoList);
+            }
+
+            if (MAGIC != buf.getInt()) {
+                throw new IOException(String.format("バイナリ形式の辞書が壊れています %s", file.getPath()));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                | NegativeArraySizeException ex) {
+            throw new IOException(String.format("バイナリ形式の辞書が壊れています %s", file.getPath()), ex);
+        }
+
+        for (Map.Entry<BrailleInfo.EXTRA, BrailleInfo> entry : extraMap.entrySet()) {
+            dict.setExtra(entry.getKey(), entry.getValue());
+        }
+        for (BrailleInfo info : infoList) {
+            dict.putLoaded(info);
+        }
+
+        return (fresh ? index : null);
+    }
+
+    private static BrailleInfo readInfo(ByteBuffer buf, BrailleDict dict, String[] strings, byte[] cells) {
+        BrailleInfo info = dict.newBrailleInfo();
+        info.setSumiji(strings[buf.getInt()]);
+        info.setNABCC(strings[buf.getInt()]);
+        info.setDesc(strings[buf.getInt()]);
+        info.setType(BrailleInfo.TYPE.values()[buf.get()]);
+        info.setPostChar(0 != buf.get());
+
+        int extras = buf.get();
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            if (0 != (extras & (1 << extra.ordinal()))) {
+                info.setExtra(extra, true);
+            }
+        }
+
+        int checks = buf.get();
+        for (BrailleInfo.CHECK check : BrailleInfo.CHECK.values()) {
+            if (0 != (checks & (1 << check.ordinal()))) {
+                info.setCheck(check, true);
+            }
+        }
+
+        int start = buf.getInt();
+        int nBox = buf.getShort();
+        if (0 > start || 0 > nBox || cells.length - nBox < start) {
+            throw new IndexOutOfBoundsException(String.format("マスの列の範囲が不正 %d %d", start, nBox));
+        }
+        info.setPackedCells(Arrays.copyOfRange(cells, start, start + nBox));
+
+        return info;
+    }
+
+    private static CompiledBrailleDict.Index readIndex(ByteBuffer buf, String[] strings, List<BrailleInfo> infoList) {
+        int maxCellLen = buf.getInt();
+        boolean lineBreakSumiji = (0 != buf.get());
+
+        Map<String, BrailleInfo> sumijiMap = readMap(buf, strings, infoList);
+        Map<String, BrailleInfo> cellMap = readMap(buf, strings, infoList);
+        Map<String, BrailleInfo> nabccMap = readMap(buf, strings, infoList);
+
+        PrefixTrie<BrailleInfo> sumijiTrie = PrefixTrie.read(buf, infoList);
+        PrefixTrie<BrailleInfo> cellTrie = PrefixTrie.read(buf, infoList);
+        Map<Set<BrailleInfo.EXTRA>, PrefixTrie<BrailleInfo>> runTries = Util.newHashMap();
+        for (Set<BrailleInfo.EXTRA> run : CompiledBrailleDict.getRuns()) {
+            runTries.put(run, PrefixTrie.read(buf, infoList));
+        }
+        PrefixTrie<BrailleInfo> nabccTrie = PrefixTrie.read(buf, infoList);
+
+        return new CompiledBrailleDict.Index(sumijiMap, sumijiTrie, cellMap, cellTrie, runTries, nabccMap, nabccTrie,
+                maxCellLen, lineBreakSumiji);
+    }
+
+    private static Map<String, BrailleInfo> readMap(ByteBuffer buf, String[] strings, List<BrailleInfo> infoList) {
+        Map<String, BrailleInfo> map = Util.newHashMap();
+        int n = buf.getInt();
+        for (int i = 0; i < n; i++) {
+            String key = strings[buf.getInt()];
+            map.put(key, infoList.get(buf.getInt()));
+        }
+
+        return map;
+    }
+}
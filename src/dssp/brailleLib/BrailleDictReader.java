@@ -0,0 +1,239 @@
+package dssp.brailleLib;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.StringTokenizer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * XML形式の辞書をStAXで読み込む<br>
+ * ・DOMを作らずに、dict/extra/*とdict/chars/charとを読みながらBrailleInfoを登録する
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+final class BrailleDictReader {
+    private final BrailleDict dict;
+    private final XMLStreamReader reader;
+
+    /**
+    * 要素の深さ(dict=1)
+    */
+    private int depth = 0;
+    /**
+    * 読んでいるdictの子要素(extraかchars)の名前
+    */
+    private String sectionName = null;
+    /**
+    * 読み込み済の符号
+    */
+    private final EnumSet<BrailleInfo.EXTRA> extraSet = EnumSet.noneOf(BrailleInfo.EXTRA.class);
+
+    /**
+    * 読んでいる符号か文字
+    */
+    private BrailleInfo info = null;
+    private BrailleInfo.EXTRA extra = null;
+    private int infoDepth = 0;
+    /**
+    * マスを読む要素(符号の要素か、文字の最初のbraile要素)の深さ 読まない場合は0
+    */
+    private int codeScopeDepth = 0;
+    private boolean braileFound = false;
+    /**
+    * 読んでいるcode要素のテキスト
+    */
+    private StringBuilder dotText = null;
+    private int codeDepth = 0;
+
+    private BrailleDictReader(BrailleDict dict, XMLStreamReader reader) {
+        this.dict = dict;
+        this.reader = reader;
+    }
+
+    /**
+    * 辞書を読み込む
+    *
+    * @param file 辞書ファイル
+    * @param dict 辞書
+    * @throws IOException 読み込みに失敗した場合
+    * @throws XMLStreamException XMLが不正な場合
+    */
+    static void read(File file, BrailleDict dict) throws IOException, XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                new BrailleDictReader(dict, reader).read();
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private void read() throws XMLStreamException {
+        boolean root = false;
+        while (this.reader.hasNext()) {
+            switch (this.reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                this.depth++;
+                if (1 == this.depth) {
+                    root = BrailleDict.NAME_DICT.equals(this.reader.getLocalName());
+                } else if (root) {
+                    this.startElement(this.reader.getLocalName());
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (root && 1 < this.depth) {
+                    this.endElement();
+                }
+                this.depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                if (null != this.dotText) {
+                    this.dotText.append(this.reader.getText());
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private String attribute(String name) {
+        String value = this.reader.getAttributeValue(null, name);
+        return (null == value ? "" : value);
+    }
+
+    private void startElement(String name) {
+        if (2 == this.depth) {
+            this.sectionName = name;
+            return;
+        }
+        if (null == this.info) {
+            // /dict/extra/*
+            if (3 == this.depth && BrailleDict.NAME_EXTRA.equals(this.sectionName)) {
+                for (BrailleInfo.EXTRA e : BrailleInfo.EXTRA.values()) {
+                    if (BrailleDict.extraNameMap.get(e).equals(name) && false == this.extraSet.contains(e)) {
+                        this.startExtra(e);
+                        break;
+                    }
+                }
+            }
+            // /dict/chars/char
+            else if (3 == this.depth && BrailleDict.NAME_CHARS.equals(this.sectionName)
+                    && BrailleDict.NAME_CHAR.equals(name)) {
+                this.startChar();
+            }
+            return;
+        }
+
+        if (null == this.extra && false == this.braileFound && BrailleDict.NAME_BRAILE.equals(name)) {
+            this.braileFound = true;
+            this.codeScopeDepth = this.depth;
+            this.loadFlags();
+        } else if (0 < this.codeScopeDepth && null == this.dotText && BrailleDict.NAME_CODE.equals(name)) {
+            this.dotText = new StringBuilder();
+            this.codeDepth = this.depth;
+        }
+    }
+
+    private void startExtra(BrailleInfo.EXTRA e) {
+        this.extra = e;
+        this.info = this.dict.newBrailleInfo();
+        this.info.setSumiji(e.toString());
+        this.info.setType(BrailleInfo.TYPE.ADDITIONAL);
+        this.info.setPostChar(false);
+        this.info.setNABCC(this.attribute(BrailleDict.NAME_NABCC));
+        this.infoDepth = this.depth;
+        this.codeScopeDepth = this.depth;
+        this.loadFlags();
+    }
+
+    private void startChar() {
+        this.info = this.dict.newBrailleInfo();
+        this.info.setSumiji(this.attribute(BrailleDict.NAME_SUMIJI));
+
+        String type = this.attribute(BrailleDict.NAME_TYPE);
+        if (type.isEmpty()) {
+            this.info.setType(BrailleInfo.TYPE.VISIBLE);
+            this.info.setPostChar(false);
+        } else {
+            this.info.setType(BrailleInfo.TYPE.valueOf(type));
+            this.info.setPostChar(Boolean.valueOf(this.attribute(BrailleDict.NAME_POSTCHAR)));
+        }
+
+        this.info.setNABCC(this.attribute(BrailleDict.NAME_NABCC));
+        this.info.setDesc(this.attribute(BrailleDict.NAME_DESC));
+        this.infoDepth = this.depth;
+        this.braileFound = false;
+    }
+
+    /**
+    * 符号と確認の属性を読む
+    */
+    private void loadFlags() {
+        for (BrailleInfo.EXTRA e : BrailleInfo.EXTRA.values()) {
+            String flag = this.attribute(BrailleDict.extraNameMap.get(e));
+            if (0 == flag.compareToIgnoreCase("true")) {
+                this.info.setExtra(e, true);
+            }
+        }
+
+        for (BrailleInfo.CHECK check : BrailleInfo.CHECK.values()) {
+            String flag = this.attribute(BrailleDict.checkNameMap.get(check));
+            if (0 == flag.compareToIgnoreCase("true")) {
+                this.info.setCheck(check, true);
+            }
+        }
+    }
+
+    private void endElement() throws XMLStreamException {
+        if (2 == this.depth) {
+            this.sectionName = null;
+            return;
+        }
+        if (null == this.info) {
+            return;
+        }
+
+        if (null != this.dotText && this.codeDepth == this.depth) {
+            StringTokenizer st = new StringTokenizer(this.dotText.toString(), BrailleDict.DOT_SEPARATOR);
+            int[] dots = new int[st.countTokens()];
+            for (int j = 0; st.hasMoreTokens(); j++) {
+                dots[j] = Integer.parseInt(st.nextToken());
+            }
+            this.info.addBox(dots);
+            this.dotText = null;
+        }
+        if (this.codeScopeDepth == this.depth) {
+            this.codeScopeDepth = 0;
+        }
+        if (this.infoDepth == this.depth) {
+            if (null != this.extra) {
+                this.dict.setExtra(this.extra, this.info);
+                this.extraSet.add(this.extra);
+            } else if (false == this.braileFound) {
+                throw new XMLStreamException(String.format("「%s」に%s要素がありません", this.info.getSumiji(),
+                        BrailleDict.NAME_BRAILE), this.reader.getLocation());
+            } else {
+                this.dict.putLoaded(this.info);
+            }
+            this.info = null;
+            this.extra = null;
+            this.infoDepth = 0;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package dssp.brailleLib;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * XML形式の辞書を、DOMを作らずに書き出す<br>
+ * ・出力はDOMをTransformerで書き出した場合と同じ(属性は名前の順、インデントなし)<br>
+ * ・同じフォルダの一時ファイルに書いてから置き換えるので、途中で失敗しても元のファイルは壊れない
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+final class BrailleDictWriter {
+    private final Writer writer;
+    /**
+    * 開始タグの「>」をまだ書いていない
+    */
+    private boolean tagOpen = false;
+
+    private BrailleDictWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+    * 辞書を書き出す
+    *
+    * @param file 辞書ファイル
+    * @param dict 辞書
+    * @throws IOException 書き込みに失敗した場合
+    */
+    static void write(File file, BrailleDict dict) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                Writer out = new BufferedWriter(
+                        new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+                new BrailleDictWriter(out).writeDict(dict);
+                out.flush();
+                channel.force(true);
+            }
+
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private void writeDict(BrailleDict dict) throws IOException {
+        this.writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+        this.startElement(BrailleDict.NAME_DICT, null);
+
+        boolean haveExtra = false;
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            BrailleInfo info = dict.getOwnExtra(extra);
+            if (null == info) {
+                continue;
+            }
+            if (false == haveExtra) {
+                this.startElement(BrailleDict.NAME_EXTRA, null);
+                haveExtra = true;
+            }
+            Map<String, String> attrs = new TreeMap<String, String>();
+            attrs.put(BrailleDict.NAME_TYPE, info.getType().name());
+            attrs.put(BrailleDict.NAME_POSTCHAR, Boolean.toString(info.isPostChar()));
+            attrs.put(BrailleDict.NAME_NABCC, info.getNABCC(false));
+            this.startElement(BrailleDict.extraNameMap.get(extra), attrs);
+            this.writeDots(info);
+            this.endElement(BrailleDict.extraNameMap.get(extra));
+        }
+        if (haveExtra) {
+            this.endElement(BrailleDict.NAME_EXTRA);
+        }
+
+        this.startElement(BrailleDict.NAME_CHARS, null);
+        for (BrailleInfo info : dict.getEntries()) {
+            this.writeChar(info);
+        }
+        this.endElement(BrailleDict.NAME_CHARS);
+
+        this.endElement(BrailleDict.NAME_DICT);
+    }
+
+    private void writeChar(BrailleInfo info) throws IOException {
+        Map<String, String> attrs = new TreeMap<String, String>();
+        attrs.put(BrailleDict.NAME_SUMIJI, info.getSumiji());
+        attrs.put(BrailleDict.NAME_TYPE, info.getType().name());
+        attrs.put(BrailleDict.NAME_POSTCHAR, Boolean.toString(info.isPostChar()));
+        attrs.put(BrailleDict.NAME_NABCC, info.getNABCC(false));
+        if (null != info.getDesc() && false == info.getDesc().isEmpty()) {
+            attrs.put(BrailleDict.NAME_DESC, info.getDesc());
+        }
+        this.startElement(BrailleDict.NAME_CHAR, attrs);
+
+        attrs = new TreeMap<String, String>();
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            if (info.haveExtra(extra)) {
+                attrs.put(BrailleDict.extraNameMap.get(extra), "true");
+            }
+        }
+        for (BrailleInfo.CHECK check : BrailleInfo.CHECK.values()) {
+            if (info.needCheck(check)) {
+                attrs.put(BrailleDict.checkNameMap.get(check), "true");
+            }
+        }
+        this.startElement(BrailleDict.NAME_BRAILE, attrs);
+        this.writeDots(info);
+        this.endElement(BrailleDict.NAME_BRAILE);
+
+        this.endElement(BrailleDict.NAME_CHAR);
+    }
+
+    private void writeDots(BrailleInfo info) throws IOException {
+        StringBuilder dotText = new StringBuilder();
+        Map<String, String> attrs = new TreeMap<String, String>();
+        for (int i = 0; i < info.getBoxCount(); i++) {
+            dotText.delete(0, dotText.length());
+            for (int dot : info.getBox(i)) {
+                if (0 < dotText.length()) {
+                    dotText.append(BrailleDict.DOT_SEPARATOR);
+                }
+                dotText.append(dot);
+            }
+
+            attrs.put(BrailleDict.NAME_INDEX, Integer.toString(i + 1));
+            this.startElement(BrailleDict.NAME_CODE, attrs);
+            if (0 < dotText.length()) {
+                this.closeTag();
+                this.writer.write(dotText.toString());
+            }
+            this.endElement(BrailleDict.NAME_CODE);
+        }
+    }
+
+    private void closeTag() throws IOException {
+        if (this.tagOpen) {
+            this.writer.write('>');
+            this.tagOpen = false;
+        }
+    }
+
+    private void startElement(String name, Map<String, String> attrs) throws IOException {
+        this.closeTag();
+        this.writer.write('<');
+        this.writer.write(name);
+        if (null != attrs) {
+            for (Map.Entry<String, String> attr : attrs.entrySet()) {
+                this.writer.write(' ');
+                this.writer.write(attr.getKey());
+                this.writer.write("=\"");
+                this.writeAttribute(attr.getValue());
+                this.writer.write('"');
+            }
+        }
+        this.tagOpen = true;
+    }
+
+    private void endElement(String name) throws IOException {
+        if (this.tagOpen) {
+            this.writer.write("/>");
+            this.tagOpen = false;
+            return;
+        }
+        this.writer.write("</");
+        this.writer.write(name);
+        this.writer.write('>');
+    }
+
+    /**
+    * 属性の値を書く<br>
+    * ・読み込みで正規化されないように、タブと改行も文字参照にする
+    */
+    private void writeAttribute(String value) throws IOException {
+        if (null == value) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                this.writer.write("&amp;");
+                break;
+            case '<':
+                this.writer.write("&lt;");
+                break;
+            case '>':
+                this.writer.write("&gt;");
+                break;
+            case '"':
+                this.writer.write("&quot;");
+                break;
+            case '\t':
+                this.writer.write("&#9;");
+                break;
+            case '\n':
+                this.writer.write("&#10;");
+                break;
+            case '\r':
+                this.writer.write("&#13;");
+                break;
+            default:
+                this.writer.write(c);
+                break;
+            }
+        }
+    }
+}
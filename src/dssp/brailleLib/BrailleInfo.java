@@ -1,11 +1,10 @@
 package dssp.brailleLib;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
-import java.util.EnumSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * 墨字と点字の情報
@@ -14,6 +13,11 @@ import java.util.Map.Entry;
  *
  */
 public class BrailleInfo implements Cloneable {
+    /**
+    * マスがない場合のパック値の配列(UNKNOWNなどのインスタンスより先に初期化する)
+    */
+    private static final byte[] NO_CELLS = new byte[0];
+
     public static final BrailleInfo UNKNOWN = new BrailleInfo();
     public static final BrailleInfo SPACE = new BrailleInfo();
     public static final BrailleInfo LINEBREAK = new BrailleInfo();
@@ -27,6 +31,9 @@ public class BrailleInfo implements Cloneable {
         LINEBREAK.setSumiji("\n");
         LINEBREAK.setType(TYPE.VISIBLE);
         //        LINEBREAK.setLineBreak(true);
+        UNKNOWN.freeze();
+        SPACE.freeze();
+        LINEBREAK.freeze();
     }
 
     public static enum TYPE {
@@ -103,6 +110,17 @@ public class BrailleInfo implements Cloneable {
     */
     public static final int MAX_DOT_COUNT = 6;
 
+    /**
+    * 点の番号の最大値(8点点字まで)
+    */
+    static final int MAX_DOT_NUMBER = 8;
+
+    /**
+    * 点がないマス(改行など)を表すパック値<br>
+    * ・点の組のパック値とは重ならない
+    */
+    static final char NO_CELL = '\uffff';
+
     /**
     * 行列、表の位置情報<br>
     * ・宣言の順に開始と終了とをチェックするので、順場を変えてはいけない
@@ -137,7 +155,10 @@ public class BrailleInfo implements Cloneable {
         TABLE_CLOSE;
     }
 
-    private EnumSet<TABLE> tableSet = EnumSet.noneOf(TABLE.class);
+    /**
+    * 行列・表の位置情報のビット(TABLEの番号のビット)
+    */
+    private int tableBits = 0;
 
     /**
     * 行列や表のオプション情報
@@ -185,21 +206,53 @@ public class BrailleInfo implements Cloneable {
         }
     }
 
-    private EnumMap<TABLE_OPTION, Object> tableOptionMap = new EnumMap<TABLE_OPTION, Object>(TABLE_OPTION.class);
+    /**
+    * 行列・表のオプション情報(位置情報の文字にだけ、必要になってから作る)
+    */
+    private EnumMap<TABLE_OPTION, Object> tableOptionMap = null;
 
     //    private boolean lineBreak = false;
 
-    private EnumMap<EXTRA, Boolean> extraMap = new EnumMap<EXTRA, Boolean>(EXTRA.class);
+    /**
+    * 外字符、大文字符などの符号の有無のビット(EXTRAの番号のビット)
+    */
+    private int extraBits = 0;
 
     private String sumiji = "";
 
     private String nabcc = "";
 
+    /**
+    * 符号を含めたNABCCと、作った時の辞書の符号の版数<br>
+    * ・NABCCか符号の有無を変えたらnullにする。辞書の符号が変わったら版数で分かる
+    */
+    private static final class ComposedNABCC {
+        final String text;
+        final int extraVersion;
+
+        ComposedNABCC(String text, int extraVersion) {
+            this.text = text;
+            this.extraVersion = extraVersion;
+        }
+    }
+
+    private volatile ComposedNABCC composedNABCC = null;
+
+    /**
+    * hashCode()の値(0の場合は未計算)<br>
+    * ・equals()で比べる項目を変えたら0にする
+    */
+    private int hash = 0;
+
     private String desc = "";
 
     private BrailleDict dict = null;
 
-    private List<int[]> boxList = Util.newArrayList();
+    /**
+    * マスのパック値(点nを(1 << (n-1))のビットとした値)の配列<br>
+    * ・変更するたびに新しい配列を作るので、複製したインスタンスと共有してよい
+    */
+    private byte[] cells = NO_CELLS;
 
     /**
     * この字の前後に数式の区切り符号の確認が必要か
@@ -215,7 +268,10 @@ public class BrailleInfo implements Cloneable {
         POSTCHECK;
     }
 
-    private EnumMap<CHECK, Boolean> checkMap = new EnumMap<CHECK, Boolean>(CHECK.class);
+    /**
+    * 数式の区切り符号の確認の要否のビット(CHECKの番号のビット)
+    */
+    private int checkBits = 0;
 
     /**
     * 「ちゃ」の「ゃ」のように後置文字か
@@ -227,16 +283,54 @@ public class BrailleInfo implements Cloneable {
     }
 
     public void setPostChar(boolean postChar) {
+        this.checkMutable();
         this.postChar = postChar;
     }
 
+    /**
+    * 変更できないか<br>
+    * ・辞書に登録したBrailleInfoと、UNKNOWNなどの共有のインスタンスは変更できない
+    */
+    private volatile boolean frozen = false;
+
     private BrailleInfo() {
-        for (EXTRA extra : EXTRA.values()) {
-            this.setExtra(extra, false);
-        }
+    }
+
+    /**
+    * 変更できなくする<br>
+    * ・辞書に登録した時に呼ばれる。以後、変更するメソッドはUnsupportedOperationExceptionを投げる<br>
+    * ・変更する場合はtoMutable()で複製を取得する
+    *
+    * @return this
+    */
+    public BrailleInfo freeze() {
+        this.frozen = true;
+        return this;
+    }
+
+    /**
+    * 変更できないかを取得する
+    *
+    * @return true=変更できない false=変更できる
+    */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
 
-        for (CHECK check : CHECK.values()) {
-            this.setCheck(check, false);
+    /**
+    * 変更できるBrailleInfoを取得する<br>
+    * ・変更できる場合はthisを返す<br>
+    * ・変更できない場合は複製を返す。マスの配列は変更するまで元のインスタンスと共有する
+    *
+    * @return 変更できるBrailleInfo
+    */
+    public BrailleInfo toMutable() {
+        return (this.frozen ? this.clone() : this);
+    }
+
+    private void checkMutable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(String.format("変更できないBrailleInfo %s", this.sumiji));
         }
     }
 
@@ -264,7 +358,8 @@ public class BrailleInfo implements Cloneable {
     }
 
     /**
-    * 複製する
+    * 複製する<br>
+    * ・複製は変更できる。文字列とマスの配列は元のインスタンスと共有する
     *
     * @return 複製したインスタンス
     */
@@ -273,33 +368,13 @@ public class BrailleInfo implements Cloneable {
         try {
             BrailleInfo info = (BrailleInfo) super.clone();
 
-            info.sumiji = new String(this.sumiji);
-            //            info.extraMap = this.extraMap.clone();
-            //            info.checkMap = this.checkMap.clone();
-            //            info.tableSet = this.tableSet.clone();
-            for (Entry<EXTRA, Boolean> entry : this.extraMap.entrySet()) {
-                info.extraMap.put(entry.getKey(), entry.getValue());
-            }
-            for (Entry<CHECK, Boolean> entry : this.checkMap.entrySet()) {
-                info.checkMap.put(entry.getKey(), entry.getValue());
-            }
-            for (TABLE val : this.tableSet) {
-                info.tableSet.add(val);
-            }
+            info.frozen = false;
             info.dict = this.dict;
             //            info.lineBreak = this.lineBreak;
-            info.desc = new String(this.desc);
 
-            info.tableOptionMap = this.tableOptionMap.clone();
+            info.tableOptionMap = (null == this.tableOptionMap ? null : this.tableOptionMap.clone());
 
-            info.boxList = Util.newArrayList();
-            for (int i = 0; i < this.boxList.size(); i++) {
-                int[] dotsSrc = this.boxList.get(i);
-                if (null != dotsSrc) {
-                    dotsSrc = Arrays.copyOf(dotsSrc, dotsSrc.length);
-                    info.addBox(dotsSrc);
-                }
-            }
+            info.cells = this.cells;
 
             return info;
         } catch (Exception ex) {
@@ -322,6 +397,9 @@ public class BrailleInfo implements Cloneable {
         }
 
         BrailleInfo src = (BrailleInfo) o;
+        if (this.cells.length != src.cells.length || this.hashCode() != src.hashCode()) {
+            return false;
+        }
         if (null == this.getSumiji()) {
             if (null != src.getSumiji()) {
                 return false;
@@ -330,13 +408,7 @@ public class BrailleInfo implements Cloneable {
             return false;
         }
 
-        if (false == Arrays.deepEquals(this.extraMap.values().toArray(), src.extraMap.values().toArray())) {
-            return false;
-        }
-        if (false == Arrays.deepEquals(this.checkMap.values().toArray(), src.checkMap.values().toArray())) {
-            return false;
-        }
-        if (false == Arrays.deepEquals(this.tableSet.toArray(), src.tableSet.toArray())) {
+        if (this.extraBits != src.extraBits || this.checkBits != src.checkBits || this.tableBits != src.tableBits) {
             return false;
         }
         if (this.dict != src.dict) {
@@ -362,45 +434,46 @@ public class BrailleInfo implements Cloneable {
         //        {
         //            return false;
         //        }
-        if (false == Arrays.deepEquals(this.tableOptionMap.values().toArray(), src.tableOptionMap.values().toArray())) {
+        if (false == Arrays.deepEquals(this.tableOptionValues(), src.tableOptionValues())) {
             return false;
         }
 
-        if (this.getBoxCount() != src.getBoxCount()) {
-            return false;
-        }
-        for (int i = 0; i < this.getBoxCount(); i++) {
-            int[] dots1 = this.getBox(i);
-            int[] dots2 = src.getBox(i);
-            if (false == Arrays.equals(dots1, dots2)) {
-                return false;
-            }
-        }
-
-        return true;
+        return Arrays.equals(this.cells, src.cells);
     }
 
+    /**
+    * equals()で比べる項目からハッシュ値を求める<br>
+    * ・説明はequals()で比べないので含めない<br>
+    * ・求めた値は、項目を変えるまで使い回す
+    */
     @Override
     public int hashCode() {
+        int h = this.hash;
+        if (0 != h) {
+            return h;
+        }
         int result = 17;
-        result = 31 * result + this.sumiji.hashCode();
-        result = 31 * result + this.extraMap.hashCode();
-        result = 31 * result + this.checkMap.hashCode();
-        result = 31 * result + this.tableSet.hashCode();
-        result = 31 * result + this.type.hashCode();
-        result = 31 * result + this.nabcc.hashCode();
-        result = 31 * result + this.dict.hashCode();
-        result = 31 * result + this.desc.hashCode();
-        result = 31 * result + this.tableOptionMap.hashCode();
-
-        for (int i = 0; i < this.getBoxCount(); i++) {
-            int[] dots = this.getBox(i);
-            result = 31 * result + Arrays.hashCode(dots);
+        result = 31 * result + (null == this.sumiji ? 0 : this.sumiji.hashCode());
+        result = 31 * result + this.extraBits;
+        result = 31 * result + this.checkBits;
+        result = 31 * result + this.tableBits;
+        result = 31 * result + (null == this.type ? 0 : this.type.hashCode());
+        result = 31 * result + (null == this.nabcc ? 0 : this.nabcc.hashCode());
+        result = 31 * result + (null == this.dict ? 0 : this.dict.hashCode());
+        result = 31 * result + Arrays.deepHashCode(this.tableOptionValues());
+        result = 31 * result + Arrays.hashCode(this.cells);
+        if (0 == result) {
+            result = 1;
         }
+        this.hash = result;
 
         return result;
     }
 
+    private Object[] tableOptionValues() {
+        return (null == this.tableOptionMap ? new Object[0] : this.tableOptionMap.values().toArray());
+    }
+
     /**
     * 辞書を取得する
     *
@@ -425,7 +498,9 @@ public class BrailleInfo implements Cloneable {
     * @param sumiji 墨字
     */
     public void setSumiji(String sumiji) {
+        this.checkMutable();
         this.sumiji = sumiji;
+        this.hash = 0;
     }
 
     /**
@@ -443,17 +518,26 @@ public class BrailleInfo implements Cloneable {
     * @param type TYPE
     */
     public void setType(TYPE type) {
+        this.checkMutable();
         this.type = type;
+        this.hash = 0;
     }
 
     /**
-    * NABCCコードを取得する
+    * NABCCコードを取得する<br>
+    * ・符号を含めたNABCCは、作ったものを辞書の符号が変わるまで使い回す
     *
     * @param withExtra true=符号を含める
     * @return NABCCコード
     */
     public String getNABCC(boolean withExtra) {
-        if (withExtra) {
+        if (withExtra && 0 != this.extraBits) {
+            int version = (null == this.dict ? 0 : this.dict.getExtraVersion());
+            ComposedNABCC composed = this.composedNABCC;
+            if (null != composed && composed.extraVersion == version) {
+                return composed.text;
+            }
+
             StringBuilder buf = new StringBuilder();
             for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
                 if (this.haveExtra(extra)) {
@@ -461,7 +545,9 @@ public class BrailleInfo implements Cloneable {
                 }
             }
             buf.append(this.nabcc);
-            return buf.toString();
+            composed = new ComposedNABCC(buf.toString(), version);
+            this.composedNABCC = composed;
+            return composed.text;
         }
 
         return nabcc;
@@ -473,7 +559,10 @@ public class BrailleInfo implements Cloneable {
     * @param nabcc NABCCコード
     */
     public void setNABCC(String nabcc) {
+        this.checkMutable();
         this.nabcc = nabcc;
+        this.composedNABCC = null;
+        this.hash = 0;
     }
 
     /**
@@ -484,21 +573,33 @@ public class BrailleInfo implements Cloneable {
     * @return マスの数
     */
     public int getBoxCount() {
-        return this.boxList.size();
+        return this.cells.length;
     }
 
     /**
-    * マスの点のリストを取得する
+    * マスの点のリストを取得する<br>
+    * ・点の番号の昇順の新しい配列を返す
     *
     * @param index マスの番号(0から始まる)
     * @return 点のリスト
     * @throws IndexOutOfBoundsException indexが負か、マスの数以上
     */
     public int[] getBox(int index) {
-        if (0 > index || this.boxList.size() <= index) {
+        return unpackDots(this.getPackedBox(index));
+    }
+
+    /**
+    * マスのパック値を取得する
+    *
+    * @param index マスの番号(0から始まる)
+    * @return パック値
+    * @throws IndexOutOfBoundsException indexが負か、マスの数以上
+    */
+    int getPackedBox(int index) {
+        if (0 > index || this.cells.length <= index) {
             throw new IndexOutOfBoundsException("indexが負か、マスの数以上");
         }
-        return this.boxList.get(index);
+        return this.cells[index] & 0xff;
     }
 
     /**
@@ -521,16 +622,21 @@ public class BrailleInfo implements Cloneable {
     * @param index マスの番号。-1の場合はマスのリストの最後に追加する
     * @param dots マスの点のリスト
     * @return 追加されたマスの番号(0から始まる)
+    * @throws IllegalArgumentException 点の番号が1からMAX_DOT_NUMBERの範囲外の場合
     */
     public int addBox(int index, int[] dots) {
-        int[] tmp = Arrays.copyOf(dots, dots.length);
-        if (0 > index || this.boxList.size() <= index) {
-            this.boxList.add(tmp);
-            return this.boxList.size() - 1;
-        } else {
-            this.boxList.add(index, tmp);
-            return index;
+        this.checkMutable();
+        byte cell = toCell(dots);
+        if (0 > index || this.cells.length <= index) {
+            index = this.cells.length;
         }
+        byte[] tmp = new byte[this.cells.length + 1];
+        System.arraycopy(this.cells, 0, tmp, 0, index);
+        tmp[index] = cell;
+        System.arraycopy(this.cells, index, tmp, index + 1, this.cells.length - index);
+        this.setCells(tmp);
+
+        return index;
     }
 
     /**
@@ -539,13 +645,16 @@ public class BrailleInfo implements Cloneable {
     * @param index マスの番号(0から始まる)
     * @param dots マスの点のリスト
     * @throws IndexOutOfBoundsException indexが負か、マスの数以上
+    * @throws IllegalArgumentException 点の番号が1からMAX_DOT_NUMBERの範囲外の場合
     */
     public void setBox(int index, int[] dots) {
-        if (0 > index || this.boxList.size() <= index) {
+        this.checkMutable();
+        if (0 > index || this.cells.length <= index) {
             throw new IndexOutOfBoundsException("indexが負か、マスの数以上");
         }
-        int[] tmp = Arrays.copyOf(dots, dots.length);
-        this.boxList.set(index, tmp);
+        byte[] tmp = this.cells.clone();
+        tmp[index] = toCell(dots);
+        this.setCells(tmp);
     }
 
     /**
@@ -556,10 +665,14 @@ public class BrailleInfo implements Cloneable {
     * @throws IndexOutOfBoundsException indexが負か、マスの数以上
     */
     public boolean delBox(int index) {
-        if (0 > index || this.boxList.size() <= index) {
+        this.checkMutable();
+        if (0 > index || this.cells.length <= index) {
             throw new IndexOutOfBoundsException("indexが負か、マスの数以上");
         }
-        this.boxList.remove(index);
+        byte[] tmp = new byte[this.cells.length - 1];
+        System.arraycopy(this.cells, 0, tmp, 0, index);
+        System.arraycopy(this.cells, index + 1, tmp, index, tmp.length - index);
+        this.setCells(tmp);
         return true;
     }
 
@@ -567,7 +680,8 @@ public class BrailleInfo implements Cloneable {
     * マスを全て削除する
     */
     public void delAllBox() {
-        this.boxList.clear();
+        this.checkMutable();
+        this.setCells(NO_CELLS);
     }
 
     /**
@@ -578,12 +692,10 @@ public class BrailleInfo implements Cloneable {
     * @return 移動後のマスの番号(0から始まる)
     */
     public int moveLeft(int index) {
-        if (1 > index || this.boxList.size() <= index) {
+        if (1 > index || this.cells.length <= index) {
             return index;
         }
-        int[] dots = this.getBox(index);
-        this.addBox(index - 1, dots);
-        this.delBox(index + 1);
+        this.swapBox(index - 1, index);
 
         return index - 1;
     }
@@ -596,16 +708,45 @@ public class BrailleInfo implements Cloneable {
     * @return 移動後のマスの番号(0から始まる)
     */
     public int moveRight(int index) {
-        if (0 > index || (this.boxList.size() - 1) <= index) {
+        if (0 > index || (this.cells.length - 1) <= index) {
             return index;
         }
-        int[] dots = this.getBox(index);
-        this.addBox(index + 2, dots);
-        this.delBox(index);
+        this.swapBox(index, index + 1);
 
         return index + 1;
     }
 
+    private void swapBox(int index1, int index2) {
+        byte[] tmp = this.cells.clone();
+        tmp[index1] = this.cells[index2];
+        tmp[index2] = this.cells[index1];
+        this.setCells(tmp);
+    }
+
+    private void setCells(byte[] cells) {
+        this.checkMutable();
+        this.cells = cells;
+        this.hash = 0;
+    }
+
+    /**
+    * マスのパック値の列をまとめて設定する<br>
+    * ・バイナリ形式の辞書の読み込みで、マスを1つずつ追加せずに済ませる<br>
+    * ・配列は複製せずに使うので、渡した後は変更しないこと
+    *
+    * @param cells マスのパック値(1マス1バイト)
+    */
+    void setPackedCells(byte[] cells) {
+        this.setCells(0 == cells.length ? NO_CELLS : cells);
+    }
+
+    private static byte toCell(int[] dots) {
+        if (null == dots) {
+            throw new IllegalArgumentException("dotsがnull");
+        }
+        return (byte) packDots(dots);
+    }
+
     /**
     * 符号のBrailleInfoを取得する
     *
@@ -626,7 +767,14 @@ public class BrailleInfo implements Cloneable {
     * @param flag true=あり false=なし
     */
     public void setExtra(EXTRA extra, boolean flag) {
-        this.extraMap.put(extra, flag);
+        this.checkMutable();
+        if (flag) {
+            this.extraBits |= (1 << extra.ordinal());
+        } else {
+            this.extraBits &= ~(1 << extra.ordinal());
+        }
+        this.composedNABCC = null;
+        this.hash = 0;
     }
 
     /**
@@ -636,16 +784,17 @@ public class BrailleInfo implements Cloneable {
     * @return true=あり false=なし
     */
     public boolean haveExtra(EXTRA extra) {
-        return this.extraMap.get(extra);
+        return (0 != (this.extraBits & (1 << extra.ordinal())));
     }
 
     /**
     * 符号を全て無しにする
     */
     public void clearExtra() {
-        for (EXTRA extra : EXTRA.values()) {
-            this.extraMap.put(extra, false);
-        }
+        this.checkMutable();
+        this.extraBits = 0;
+        this.composedNABCC = null;
+        this.hash = 0;
     }
 
     /**
@@ -681,12 +830,18 @@ public class BrailleInfo implements Cloneable {
     * @param options オプション情報(ない場合はnull)
     */
     public void setTable(TABLE mark, EnumMap<TABLE_OPTION, Object> options) {
-        this.tableSet.add(mark);
+        this.checkMutable();
+        this.tableBits |= (1 << mark.ordinal());
         this.setDesc(mark.toString());
         if (null != options) {
-            this.tableOptionMap.clear();
+            if (null == this.tableOptionMap) {
+                this.tableOptionMap = new EnumMap<TABLE_OPTION, Object>(TABLE_OPTION.class);
+            } else {
+                this.tableOptionMap.clear();
+            }
             this.tableOptionMap.putAll(options);
         }
+        this.hash = 0;
     }
 
     /**
@@ -695,7 +850,9 @@ public class BrailleInfo implements Cloneable {
     * @param mark 位置情報
     */
     public void unsetTable(TABLE mark) {
-        this.tableSet.remove(mark);
+        this.checkMutable();
+        this.tableBits &= ~(1 << mark.ordinal());
+        this.hash = 0;
     }
 
     /**
@@ -705,7 +862,7 @@ public class BrailleInfo implements Cloneable {
     * @return true=位置情報がある false=ない
     */
     public boolean haveTable(TABLE mark) {
-        return this.tableSet.contains(mark);
+        return (0 != (this.tableBits & (1 << mark.ordinal())));
     }
 
     /**
@@ -717,7 +874,7 @@ public class BrailleInfo implements Cloneable {
     @SuppressWarnings("unchecked")
     public <T> T getTableOption(TABLE_OPTION key) {
         T obj = null;
-        Object val = this.tableOptionMap.get(key);
+        Object val = (null == this.tableOptionMap ? null : this.tableOptionMap.get(key));
         switch (key) {
         case ROWSPAN:
             if (null == val) {
@@ -783,6 +940,7 @@ public class BrailleInfo implements Cloneable {
     * @param desc 説明のテキスト
     */
     public void setDesc(String desc) {
+        this.checkMutable();
         this.desc = desc;
     }
 
@@ -793,7 +951,13 @@ public class BrailleInfo implements Cloneable {
     * @param flag　true=必要 false=不要
     */
     public void setCheck(CHECK check, boolean flag) {
-        this.checkMap.put(check, flag);
+        this.checkMutable();
+        if (flag) {
+            this.checkBits |= (1 << check.ordinal());
+        } else {
+            this.checkBits &= ~(1 << check.ordinal());
+        }
+        this.hash = 0;
     }
 
     /**
@@ -803,8 +967,107 @@ public class BrailleInfo implements Cloneable {
     * @return true/false
     */
     public boolean needCheck(CHECK check) {
-        Boolean flag = this.checkMap.get(check);
-        return (null == flag ? false : flag);
+        return (0 != (this.checkBits & (1 << check.ordinal())));
+    }
+
+    /**
+    * マスの点のリストを、点nを(1 << (n-1))のビットとした値にする
+    *
+    * @param dots マスの点のリスト(nullの場合はNO_CELL)
+    * @return パック値
+    * @throws IllegalArgumentException 点の番号が1からMAX_DOT_NUMBERの範囲外の場合
+    */
+    static char packDots(int[] dots) {
+        if (null == dots) {
+            return NO_CELL;
+        }
+        int mask = 0;
+        for (int dot : dots) {
+            if (1 > dot || MAX_DOT_NUMBER < dot) {
+                throw new IllegalArgumentException(String.format("点の番号が範囲外 %d", dot));
+            }
+            mask |= (1 << (dot - 1));
+        }
+
+        return (char) mask;
+    }
+
+    /**
+    * マスの点のリストをパック値にする<br>
+    * ・点の番号が範囲外のマスは、どのマスの列とも一致しないNO_CELLにする
+    *
+    * @param dots マスの点のリスト(nullの場合はNO_CELL)
+    * @return パック値
+    */
+    static char packCell(int[] dots) {
+        if (null == dots) {
+            return NO_CELL;
+        }
+        for (int dot : dots) {
+            if (1 > dot || MAX_DOT_NUMBER < dot) {
+                return NO_CELL;
+            }
+        }
+
+        return packDots(dots);
+    }
+
+    /**
+    * パック値をマスの点のリストに戻す
+    *
+    * @param mask パック値
+    * @return マスの点のリスト(昇順) NO_CELLの場合はnull
+    */
+    static int[] unpackDots(int mask) {
+        if (NO_CELL == mask) {
+            return null;
+        }
+        int[] dots = new int[Integer.bitCount(mask)];
+        int n = 0;
+        for (int dot = 1; dot <= MAX_DOT_NUMBER; dot++) {
+            if (0 != (mask & (1 << (dot - 1)))) {
+                dots[n++] = dot;
+            }
+        }
+
+        return dots;
+    }
+
+    /**
+    * 符号のマスと本体のマスとを続けたパック値の列を取得する<br>
+    * ・符号はEXTRAの宣言の順
+    *
+    * @return パック値の列 辞書に符号が登録されていない場合はnull
+    */
+    String getPackedCells() {
+        return this.getPackedCells(Collections.<EXTRA> emptySet());
+    }
+
+    /**
+    * 指定した符号を除いた符号のマスと、本体のマスとを続けたパック値の列を取得する<br>
+    * ・符号が続く範囲の中では、範囲の符号を省いたマスの列で墨字を検索する
+    *
+    * @param skip 除く符号
+    * @return パック値の列 辞書に符号が登録されていない場合はnull
+    */
+    String getPackedCells(Set<EXTRA> skip) {
+        StringBuilder buf = new StringBuilder();
+        for (EXTRA extra : EXTRA.values()) {
+            if (this.haveExtra(extra) && false == skip.contains(extra)) {
+                BrailleInfo e = this.getExtra(extra);
+                if (null == e) {
+                    return null;
+                }
+                for (int i = 0; i < e.getBoxCount(); i++) {
+                    buf.append((char) e.getPackedBox(i));
+                }
+            }
+        }
+        for (byte cell : this.cells) {
+            buf.append((char) (cell & 0xff));
+        }
+
+        return buf.toString();
     }
 
     /**
@@ -813,6 +1076,6 @@ public class BrailleInfo implements Cloneable {
     * @return true=空点字
     */
     public boolean isEmpty() {
-        return (0 == this.boxList.size());
+        return (0 == this.cells.length);
     }
 }
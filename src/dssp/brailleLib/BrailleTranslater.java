@@ -1,18 +1,68 @@
 package dssp.brailleLib;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * 墨字を点字に翻訳する<br>
+ * ・翻訳中の状態は呼び出しごとのTranslationに持つので、1つのインスタンスを複数のスレッドから同時に使える<br>
+ * ・翻訳モードと検索の方式は、翻訳を始めた時の値を使う
  *
  * @author DSSP/Minoru Yagi
  *
  */
 public final class BrailleTranslater {
     private final BrailleDict dict;
-    private final List<BrailleInfo> gaijiQueue = Util.newArrayList();
-    private final List<BrailleInfo> suufuQueue = Util.newArrayList();
-    private List<BrailleInfo> codeList = null;
+    /**
+    * 生成で渡されたスナップショット<br>
+    * ・nullの場合は翻訳のたびにdictのスナップショットを使う
+    */
+    private final CompiledBrailleDict compiled;
+
+    /**
+    * 並列に翻訳する場合の段落の最小の長さ
+    */
+    private static final int PARALLEL_SEGMENT_LEN = 8192;
+
+    /**
+    * 1回の翻訳の状態
+    */
+    private static final class Translation {
+        final CompiledBrailleDict table;
+        final MODE mode;
+        final ENGINE engine;
+        final List<BrailleInfo> gaijiQueue = Util.newArrayList();
+        final List<BrailleInfo> suufuQueue = Util.newArrayList();
+        final PrefixTrie.Match<BrailleInfo> match = new PrefixTrie.Match<BrailleInfo>();
+        List<BrailleInfo> codeList = null;
+        boolean ignoreLineBreak = false;
+        boolean includeExtra = false;
+        UnknownListener listener = null;
+        /**
+        * 次に翻訳する位置、直前に一致した墨字の終了位置、点字にした墨字の数
+        */
+        int pos = 0;
+        int end = 0;
+        int nBraille = 0;
+
+        Translation(CompiledBrailleDict table, MODE mode, ENGINE engine) {
+            this.table = table;
+            this.mode = mode;
+            this.engine = engine;
+        }
+    }
 
     /**
     * 翻訳モード
@@ -31,14 +81,169 @@ public final class BrailleTranslater {
         FORMULA;
     }
 
-    private MODE mode = MODE.TEXT;
+    private volatile MODE mode = MODE.TEXT;
+
+    /**
+    * 墨字の最長一致検索の方式<br>
+    * ・どちらの方式でも翻訳の結果は同じ
+    *
+    * @author yagi
+    *
+    */
+    public static enum ENGINE {
+        /**
+        * 辞書から作った前置木を、開始位置ごとに1回たどる(デフォルト)<br>
+        * ・1回にたどるのは辞書の最大文字数までなので、時間はテキストの長さと最大文字数の積に比例する。
+        * テキスト全体を1回で走査する自動機械(Aho-Corasickなど)ではない
+        */
+        TRIE,
+        /**
+        * 部分文字列を1文字ずつ短くしながら辞書を引く<br>
+        * ・TRIEの結果を確かめるための基準
+        */
+        LOOKUP;
+    }
+
+    private volatile ENGINE engine = ENGINE.TRIE;
+
+    /**
+    * 点字が見つからない墨字を受け取る
+    *
+    * @author yagi
+    *
+    */
+    public static interface UnknownListener {
+        /**
+        * 点字が見つからない墨字があった
+        *
+        * @param text 墨字のテキスト
+        * @param index 見つからない墨字の位置
+        */
+        void unknown(CharSequence text, int index);
+    }
+
+    /**
+    * 外字符、数符の処理が終わった墨字の区切りを受け取る<br>
+    * ・区切りから後の翻訳の結果は、区切りより前のテキストによらない
+    *
+    * @author DSSP/Minoru Yagi
+    *
+    */
+    static interface SyncListener {
+        /**
+        * 区切りがあった
+        *
+        * @param pos 区切りの位置(次に翻訳する位置)
+        * @param nCode 区切りまでの点字の数
+        * @param nBraille 区切りまでに点字にした墨字の数
+        * @return true=翻訳を止める
+        */
+        boolean sync(int pos, int nCode, int nBraille);
+    }
+
+    /**
+    * まとめて翻訳した結果<br>
+    * ・全てのテキストの点字を1つの配列に順に並べ、テキストごとの位置を持つ
+    *
+    * @author DSSP/Minoru Yagi
+    *
+    */
+    public static final class BatchResult {
+        private final BrailleInfo[] brailles;
+        private final int[] offsets;
+        private final int[] counts;
+
+        BatchResult(BrailleInfo[] brailles, int[] offsets, int[] counts) {
+            this.brailles = brailles;
+            this.offsets = offsets;
+            this.counts = counts;
+        }
+
+        /**
+        * テキストの数を取得する
+        *
+        * @return テキストの数
+        */
+        public int size() {
+            return this.counts.length;
+        }
+
+        /**
+        * 全てのテキストの点字を取得する<br>
+        * ・結果が持つ配列なので変更しないこと
+        *
+        * @return 点字の配列
+        */
+        public BrailleInfo[] getBrailles() {
+            return this.brailles;
+        }
+
+        /**
+        * テキストの点字の開始位置を取得する
+        *
+        * @param index テキストの番号(size()の場合は点字の配列の長さ)
+        * @return getBrailles()の中の位置
+        */
+        public int getOffset(int index) {
+            return this.offsets[index];
+        }
+
+        /**
+        * テキストの点字のリストを取得する
+        *
+        * @param index テキストの番号
+        * @return 変更できない点字のリスト
+        */
+        public List<BrailleInfo> getBrailleList(int index) {
+            return Collections.unmodifiableList(
+                    Arrays.asList(this.brailles).subList(this.offsets[index], this.offsets[index + 1]));
+        }
+
+        /**
+        * テキストの点字にした墨字の数を取得する
+        *
+        * @param index テキストの番号
+        * @return 点字にした墨字の数
+        */
+        public int getBrailleCount(int index) {
+            return this.counts[index];
+        }
+    }
+
+    /**
+    * 点字が見つからない墨字をログに出力する
+    */
+    private static final UnknownListener LOG_UNKNOWN = new UnknownListener() {
+        @Override
+        public void unknown(CharSequence text, int index) {
+            Util.logInfo("「%s」の点字が見つかりません", text.charAt(index));
+        }
+    };
+
+    /**
+    * 最長一致検索で一致とみなすBrailleInfo<br>
+    * ・マスがあるか、後置文字
+    */
+    private static final Predicate<BrailleInfo> MATCHABLE = new Predicate<BrailleInfo>() {
+        @Override
+        public boolean test(BrailleInfo info) {
+            return (false == info.isEmpty() || info.isPostChar());
+        }
+    };
 
     private BrailleTranslater() {
         this.dict = null;
+        this.compiled = null;
     }
 
     private BrailleTranslater(BrailleDict dict) {
         this.dict = dict;
+        this.compiled = null;
+    }
+
+    private BrailleTranslater(CompiledBrailleDict compiled) {
+        this.dict = compiled.getDict();
+        this.compiled = compiled;
     }
 
     /**
@@ -53,6 +258,32 @@ public final class BrailleTranslater {
         return obj;
     }
 
+    /**
+    * 辞書のスナップショットを使うインスタンスを生成する<br>
+    * ・生成後に辞書を変更しても、翻訳の結果は変わらない
+    *
+    * @param compiled 辞書のスナップショット
+    * @return インスタンス
+    * @throws IllegalArgumentException compiledがnullの場合
+    */
+    public static BrailleTranslater newInstance(CompiledBrailleDict compiled) {
+        if (null == compiled) {
+            throw new IllegalArgumentException("compiledがnull");
+        }
+        BrailleTranslater obj = new BrailleTranslater(compiled);
+
+        return obj;
+    }
+
+    /**
+    * 翻訳に使う辞書のスナップショットを取得する
+    *
+    * @return スナップショット
+    */
+    private CompiledBrailleDict compiled() {
+        return (null == this.compiled ? this.dict.compile() : this.compiled);
+    }
+
     /**
     * 生成で渡された辞書を取得する
     *
@@ -63,7 +294,8 @@ public final class BrailleTranslater {
     }
 
     /**
-    * 翻訳モードを設定する
+    * 翻訳モードを設定する<br>
+    * ・翻訳中の呼び出しには影響しない
     *
     * @param mode MODE
     */
@@ -80,6 +312,24 @@ public final class BrailleTranslater {
         return this.mode;
     }
 
+    /**
+    * 最長一致検索の方式を設定する
+    *
+    * @param engine ENGINE
+    */
+    public void setEngine(ENGINE engine) {
+        this.engine = engine;
+    }
+
+    /**
+    * 最長一致検索の方式を取得する
+    *
+    * @return 現在のENGINE
+    */
+    public ENGINE getEngine() {
+        return this.engine;
+    }
+
     /**
     * 墨字のテキストを点字に翻訳する<br>
     * ・辞書に点字が見つからない場合は、空の点字にする
@@ -93,101 +343,537 @@ public final class BrailleTranslater {
     */
     public int braileFromSumiji(String text, List<BrailleInfo> codeList, boolean ignoreLineBreak,
             boolean includeExtra) {
+        return this.braileFromSumiji(text, 0, text.length(), codeList, ignoreLineBreak, includeExtra, LOG_UNKNOWN);
+    }
+
+    /**
+    * 墨字のテキストの範囲を点字に翻訳する<br>
+    * ・辞書に点字が見つからない場合は、空の点字にする<br>
+    * ・部分文字列を作らずに翻訳する。点字のリストは呼び出し側で使い回してよい(最初にクリアする)<br>
+    * ・点字が見つからない墨字はlistenerに渡し、ログには出力しない
+    *
+    * @param text 墨字のテキスト
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param codeList 点字のリスト
+    * @param ignoreLineBreak true=改行を無視する
+    * @param includeExtra true=点字リストに符号を含める
+    * @param listener 点字が見つからない墨字を受け取る(nullの場合は知らせない)
+    * @return 点字にした墨字の数
+    * @throws IllegalArgumentException codeListがnullの場合
+    * @throws IndexOutOfBoundsException 範囲がtextの外の場合
+    */
+    public int braileFromSumiji(CharSequence text, int start, int end, List<BrailleInfo> codeList,
+            boolean ignoreLineBreak, boolean includeExtra, UnknownListener listener) {
+        if (null == codeList) {
+            throw new IllegalArgumentException("codeListがnull");
+        }
+        if (0 > start || start > end || end > text.length()) {
+            throw new IndexOutOfBoundsException(String.format("範囲がtextの外 %d-%d", start, end));
+        }
+        codeList.clear();
+        if (start == end) {
+            return 0;
+        }
+
+        Translation tr = new Translation(this.compiled(), this.mode, this.engine);
+        tr.codeList = codeList;
+        tr.ignoreLineBreak = ignoreLineBreak;
+        tr.includeExtra = includeExtra;
+        tr.listener = listener;
+
+        return translate(tr, text, start, end);
+    }
+
+    /**
+    * 墨字のテキストを段落に分けて、並列に点字に翻訳する<br>
+    * ・改行の直後で分けて、段落ごとにpoolで翻訳し、点字のリストを順につなげる<br>
+    * ・改行で外字符、数符の処理は終わるので、翻訳の結果はbraileFromSumiji()と同じ<br>
+    * ・辞書に改行を含む墨字がある場合、墨字の最大文字数が0の場合、テキストが短い場合は分けずに翻訳する<br>
+    * ・listenerは複数のスレッドから呼ばれ、呼ばれる順はテキストの順とは限らない
+    *
+    * @param text 墨字のテキスト
+    * @param codeList 点字のリスト
+    * @param ignoreLineBreak true=改行を無視する
+    * @param includeExtra true=点字リストに符号を含める
+    * @param listener 点字が見つからない墨字を受け取る(nullの場合は知らせない)
+    * @param pool 翻訳に使うスレッドプール(nullの場合はForkJoinPool.commonPool())
+    * @return 点字にした墨字の数
+    * @throws IllegalArgumentException codeListがnullの場合
+    */
+    public int parallelBraileFromSumiji(final CharSequence text, List<BrailleInfo> codeList,
+            final boolean ignoreLineBreak, final boolean includeExtra, final UnknownListener listener,
+            ForkJoinPool pool) {
         if (null == codeList) {
             throw new IllegalArgumentException("codeListがnull");
         }
+        codeList.clear();
         if (0 == text.length()) {
             return 0;
         }
 
-        this.codeList = codeList;
+        // 全ての段落で同じスナップショットを使う
+        final CompiledBrailleDict table = this.compiled();
+        final MODE mode = this.mode;
+        final ENGINE engine = this.engine;
+        final int[] bounds = splitParagraphs(table, text, 0, text.length(), PARALLEL_SEGMENT_LEN);
+        final int nSegment = bounds.length - 1;
+        final List<List<BrailleInfo>> results = Util.newArrayList(Collections.<List<BrailleInfo>> nCopies(nSegment,
+                null));
+        final int[] counts = new int[nSegment];
+
+        class Segments extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final int from;
+            private final int to;
+
+            Segments(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (1 == (this.to - this.from)) {
+                    Translation tr = new Translation(table, mode, engine);
+                    tr.codeList = Util.newArrayList();
+                    tr.ignoreLineBreak = ignoreLineBreak;
+                    tr.includeExtra = includeExtra;
+                    tr.listener = listener;
+                    counts[this.from] = translate(tr, text, bounds[this.from], bounds[this.from + 1]);
+                    results.set(this.from, tr.codeList);
+                    return;
+                }
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Segments(this.from, mid), new Segments(mid, this.to));
+            }
+        }
 
-        this.codeList.clear();
+        Segments all = new Segments(0, nSegment);
+        if (1 == nSegment) {
+            all.compute();
+        } else {
+            (null == pool ? ForkJoinPool.commonPool() : pool).invoke(all);
+        }
 
         int nBraille = 0;
+        int size = 0;
+        for (int i = 0; i < nSegment; i++) {
+            nBraille += counts[i];
+            size += results.get(i).size();
+        }
+        if (codeList instanceof ArrayList) {
+            ((ArrayList<BrailleInfo>) codeList).ensureCapacity(size);
+        }
+        for (int i = 0; i < nSegment; i++) {
+            codeList.addAll(results.get(i));
+        }
 
-        // 辞書の最大文字数から始めて、部分文字列を最長一致検索
-        int start = 0;
+        return nBraille;
+    }
+
+    /**
+    * 墨字の最長一致検索で先読みする文字数を取得する<br>
+    * ・1回の検索で見る文字数の最大値("\r\n"の改行を含む)
+    *
+    * @return 文字数
+    */
+    int getLookahead() {
+        return Math.max(2, this.compiled().getMaxSumijiLen());
+    }
+
+    /**
+    * テキストの範囲を改行の直後で段落に分ける<br>
+    * ・"\n"の直後で、次が"\r"でない位置で分ける。この位置は改行の一致の終わりで、一致がまたがることはない<br>
+    * ・辞書に改行を含む墨字がある場合、墨字の最大文字数が0の場合は分けない
+    *
+    * @param table 辞書のスナップショット
+    * @param text 墨字のテキスト
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param minLen 段落の最小の長さ
+    * @return 段落の境界(先頭はstart、最後はend)
+    */
+    private static int[] splitParagraphs(CompiledBrailleDict table, CharSequence text, int start, int end,
+            int minLen) {
+        if (1 > table.getMaxSumijiLen() || table.haveLineBreakSumiji() || (end - start) <= minLen) {
+            return new int[] { start, end };
+        }
+
+        List<Integer> bounds = Util.newArrayList();
+        bounds.add(start);
+        int pos = start + minLen;
+        while (pos < end) {
+            if ('\n' == text.charAt(pos - 1) && '\r' != text.charAt(pos)) {
+                bounds.add(pos);
+                pos += minLen;
+            } else {
+                pos++;
+            }
+        }
+        bounds.add(end);
+
+        int[] result = new int[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+    * テキストの範囲を最後まで点字にして、外字符、数符の処理中の点字を出力する
+    *
+    * @param tr 翻訳の状態
+    * @param text 墨字のテキスト
+    * @param start 開始位置
+    * @param end 終了位置(含まない、startより大きい)
+    * @return 点字にした墨字の数
+    */
+    private static int translate(Translation tr, CharSequence text, int start, int end) {
+        tr.pos = start;
         while (true) {
-            BrailleInfo info = null;
-            int end = Math.min(start + this.dict.getMaxSumijiLen(), text.length());
-            String sumiji = null;
-            while (end > start) {
-                // 部分文字列
-                sumiji = text.substring(start, end);
-                if (null == sumiji) {
-                    break;
-                } else if (sumiji.equals("\n\r") || sumiji.equals("\r\n")) {
-                    info = BrailleInfo.LINEBREAK;
-                    break;
-                } else if (sumiji.equals("\n") || sumiji.equals("\r")) {
-                    info = BrailleInfo.LINEBREAK;
+            step(tr, text, end);
+            if (tr.end == end) {
+                break;
+            }
+        }
+        checkGaijifu(tr);
+        checkSuufu(tr);
+
+        return tr.nBraille;
+    }
+
+    /**
+    * 墨字のテキストのstartから最後までを点字に翻訳し、外字符、数符の処理が終わった墨字の区切りごとにsyncを呼ぶ<br>
+    * ・startが前の翻訳の区切りの場合、結果はテキスト全体を翻訳した結果のstartから後と同じ<br>
+    * ・syncがtrueを返した場合は、その区切りで翻訳を止める
+    *
+    * @param text 墨字のテキスト
+    * @param start 開始位置
+    * @param codeList 点字のリスト(最初にクリアする)
+    * @param ignoreLineBreak true=改行を無視する
+    * @param includeExtra true=点字リストに符号を含める
+    * @param listener 点字が見つからない墨字を受け取る(nullの場合は知らせない)
+    * @param sync 区切りを受け取る
+    * @return 点字にした墨字の数
+    */
+    int braileFromSumiji(CharSequence text, int start, List<BrailleInfo> codeList, boolean ignoreLineBreak,
+            boolean includeExtra, UnknownListener listener, SyncListener sync) {
+        codeList.clear();
+        int end = text.length();
+        if (start == end) {
+            return 0;
+        }
+
+        Translation tr = new Translation(this.compiled(), this.mode, this.engine);
+        tr.codeList = codeList;
+        tr.ignoreLineBreak = ignoreLineBreak;
+        tr.includeExtra = includeExtra;
+        tr.listener = listener;
+        tr.pos = start;
+        while (true) {
+            step(tr, text, end);
+            if (tr.end == end) {
+                break;
+            }
+            if (tr.pos < end && tr.gaijiQueue.isEmpty() && tr.suufuQueue.isEmpty()
+                    && sync.sync(tr.pos, codeList.size(), tr.nBraille)) {
+                return tr.nBraille;
+            }
+        }
+        checkGaijifu(tr);
+        checkSuufu(tr);
+
+        return tr.nBraille;
+    }
+
+    /**
+    * 複数の墨字のテキストをまとめて点字に翻訳する<br>
+    * ・辞書のスナップショット、検索の状態、点字のリストを全てのテキストで使い回す<br>
+    * ・テキストごとの翻訳の結果はbraileFromSumiji()と同じ
+    *
+    * @param texts 墨字のテキスト
+    * @param ignoreLineBreak true=改行を無視する
+    * @param includeExtra true=点字リストに符号を含める
+    * @param listener 点字が見つからない墨字を受け取る(nullの場合は知らせない)
+    * @return 翻訳した結果
+    */
+    public BatchResult batchBraileFromSumiji(List<? extends CharSequence> texts, boolean ignoreLineBreak,
+            boolean includeExtra, UnknownListener listener) {
+        Translation tr = new Translation(this.compiled(), this.mode, this.engine);
+        tr.codeList = Util.newArrayList();
+        tr.ignoreLineBreak = ignoreLineBreak;
+        tr.includeExtra = includeExtra;
+        tr.listener = listener;
+
+        int[] offsets = new int[texts.size() + 1];
+        int[] counts = new int[texts.size()];
+        int index = 0;
+        for (CharSequence text : texts) {
+            if (0 < text.length()) {
+                tr.nBraille = 0;
+                counts[index] = translate(tr, text, 0, text.length());
+            }
+            index++;
+            offsets[index] = tr.codeList.size();
+        }
+
+        return new BatchResult(tr.codeList.toArray(new BrailleInfo[tr.codeList.size()]), offsets, counts);
+    }
+
+    /**
+    * Readerから読んだ墨字を点字に翻訳する<br>
+    * ・テキスト全体を読み込まずに、chunkSize文字ずつ読みながら翻訳し、決まった点字から順にsinkに渡す<br>
+    * ・最長一致検索のために、辞書の墨字の最大文字数だけ先読みする。外字符、数符の処理中の点字は次の読み込みに持ち越す<br>
+    * ・翻訳の結果はテキスト全体をbraileFromSumiji()で翻訳した場合と同じ<br>
+    * ・listenerに渡すテキストは読み込み用のバッファで、位置はバッファの中の位置
+    *
+    * @param reader 墨字のテキスト(閉じない)
+    * @param chunkSize 1回に読む文字数
+    * @param sink 点字を受け取る
+    * @param ignoreLineBreak true=改行を無視する
+    * @param includeExtra true=点字に符号を含める
+    * @param listener 点字が見つからない墨字を受け取る(nullの場合は知らせない)
+    * @return 点字にした墨字の数
+    * @throws IOException 読み込みに失敗した場合
+    * @throws IllegalArgumentException sinkがnullか、chunkSizeが1より小さい場合
+    */
+    public int braileFromSumiji(Reader reader, int chunkSize, Consumer<? super BrailleInfo> sink,
+            boolean ignoreLineBreak, boolean includeExtra, UnknownListener listener) throws IOException {
+        if (null == sink || 1 > chunkSize) {
+            throw new IllegalArgumentException("sinkがnull、または、chunkSizeが1より小さい");
+        }
+
+        Translation tr = new Translation(this.compiled(), this.mode, this.engine);
+        tr.codeList = Util.newArrayList();
+        tr.ignoreLineBreak = ignoreLineBreak;
+        tr.includeExtra = includeExtra;
+        tr.listener = listener;
+
+        int lookahead = Math.max(1, tr.table.getMaxSumijiLen());
+        char[] chunk = new char[chunkSize];
+        StringBuilder buf = new StringBuilder(chunkSize + lookahead);
+        if (false == fill(reader, chunk, buf, 1)) {
+            return 0;
+        }
+
+        tr.pos = 0;
+        while (true) {
+            // 最長一致検索の範囲が全て読み込まれているようにする
+            boolean more = fill(reader, chunk, buf, tr.pos + lookahead);
+            step(tr, buf, buf.length());
+            drain(tr, sink);
+            if (tr.end == buf.length()) {
+                // テキストの最後かは、続きを読んでみないと分からない
+                if (false == more || false == fill(reader, chunk, buf, tr.end + 1)) {
                     break;
-                } else {
-                    info = this.dict.getBrailleInfo(sumiji);
-                    if (false == info.isEmpty()) {
-                        break;
-                    }
-                    if (info.isPostChar()) {
-                        break;
-                    }
-                    // 部分文字列を1文字ずつ短くする
-                    end--;
                 }
             }
-            if (null == info || (false == info.isLineBreak() && false == info.isPostChar() && info.isEmpty())) {
-                if (null != sumiji) {
-                    if (sumiji.equals(" ") || sumiji.equals("　")) {
-                        info = BrailleInfo.SPACE;
-                    } else {
-                        Util.logInfo("「%s」の点字が見つかりません", sumiji);
-                        info = BrailleInfo.UNKNOWN;
+
+            // 翻訳済の部分を捨てる
+            if (chunkSize <= tr.pos && tr.pos <= buf.length()) {
+                buf.delete(0, tr.pos);
+                tr.end -= tr.pos;
+                tr.pos = 0;
+            }
+        }
+        checkGaijifu(tr);
+        checkSuufu(tr);
+        drain(tr, sink);
+
+        return tr.nBraille;
+    }
+
+    /**
+    * チャネルから読んだ墨字を点字に翻訳する<br>
+    * ・braileFromSumiji(Reader, ...)と同じ
+    *
+    * @param channel 墨字のテキスト(閉じない)
+    * @param charset 文字コード
+    * @param chunkSize 1回に読む文字数
+    * @param sink 点字を受け取る
+    * @param ignoreLineBreak true=改行を無視する
+    * @param includeExtra true=点字に符号を含める
+    * @param listener 点字が見つからない墨字を受け取る(nullの場合は知らせない)
+    * @return 点字にした墨字の数
+    * @throws IOException 読み込みに失敗した場合
+    */
+    public int braileFromSumiji(ReadableByteChannel channel, Charset charset, int chunkSize,
+            Consumer<? super BrailleInfo> sink, boolean ignoreLineBreak, boolean includeExtra,
+            UnknownListener listener) throws IOException {
+        Reader reader = Channels.newReader(channel, charset.newDecoder(), -1);
+
+        return this.braileFromSumiji(reader, chunkSize, sink, ignoreLineBreak, includeExtra, listener);
+    }
+
+    /**
+    * バッファがsize文字になるまで読む
+    *
+    * @return true=size文字以上ある false=テキストの最後までsize文字に足りない
+    */
+    private static boolean fill(Reader reader, char[] chunk, StringBuilder buf, int size) throws IOException {
+        while (buf.length() < size) {
+            int n = reader.read(chunk);
+            if (0 > n) {
+                return false;
+            }
+            buf.append(chunk, 0, n);
+        }
+
+        return true;
+    }
+
+    /**
+    * 決まった点字をsinkに渡す
+    */
+    private static void drain(Translation tr, Consumer<? super BrailleInfo> sink) {
+        for (BrailleInfo info : tr.codeList) {
+            sink.accept(info);
+        }
+        tr.codeList.clear();
+    }
+
+    /**
+    * tr.posから始まる墨字を1つ点字にする<br>
+    * ・辞書の最大文字数までの範囲で最長一致検索し、tr.posとtr.endを進める
+    *
+    * @param tr 翻訳の状態
+    * @param text 墨字のテキスト
+    * @param limit 終了位置(含まない)
+    */
+    private static void step(Translation tr, CharSequence text, int limit) {
+        int start = tr.pos;
+        BrailleInfo info = null;
+        int end = Math.min(start + tr.table.getMaxSumijiLen(), limit);
+        boolean notFound = false;
+        if (end > start) {
+            if (matchSumiji(tr, text, start, end, tr.match)) {
+                info = tr.match.value;
+                end = tr.match.end;
+            } else {
+                notFound = true;
+                end = start;
+            }
+        }
+        if (null == info || (false == info.isLineBreak() && false == info.isPostChar() && info.isEmpty())) {
+            if (notFound) {
+                char c = text.charAt(start);
+                if (' ' == c || '　' == c) {
+                    info = BrailleInfo.SPACE;
+                } else {
+                    if (null != tr.listener) {
+                        tr.listener.unknown(text, start);
                     }
+                    info = BrailleInfo.UNKNOWN;
                 }
-                start++;
+            }
+            start++;
+        } else {
+            start = end;
+        }
+        tr.nBraille++;
+        if (null != info) {
+            if (tr.includeExtra && info.haveExtra(BrailleInfo.EXTRA.GAIJIFU)) {
+                checkSuufu(tr);
+                tr.gaijiQueue.add(info);
+            } else if (tr.includeExtra && info.haveExtra(BrailleInfo.EXTRA.SUUFU)) {
+                checkGaijifu(tr);
+                tr.suufuQueue.add(info);
             } else {
-                start = end;
+                checkGaijifu(tr);
+                checkSuufu(tr);
+                if (info != BrailleInfo.LINEBREAK || false == tr.ignoreLineBreak) {
+                    addBraille(tr, info);
+                }
             }
-            nBraille++;
-            if (null != info) {
-                if (includeExtra && info.haveExtra(BrailleInfo.EXTRA.GAIJIFU)) {
-                    this.checkSuufu();
-                    this.gaijiQueue.add(info);
-                } else if (includeExtra && info.haveExtra(BrailleInfo.EXTRA.SUUFU)) {
-                    this.checkGaijifu();
-                    this.suufuQueue.add(info);
+        }
+        tr.pos = start;
+        tr.end = end;
+    }
+
+    /**
+    * startから始まる最長の墨字か改行を検索する<br>
+    * ・同じ長さなら改行を優先する
+    *
+    * @param tr 翻訳の状態
+    * @param text 墨字のテキスト
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param match 検索の結果
+    * @return true=見つかった false=見つからない
+    */
+    private static boolean matchSumiji(Translation tr, CharSequence text, int start, int end,
+            PrefixTrie.Match<BrailleInfo> match) {
+        if (ENGINE.LOOKUP == tr.engine) {
+            match.clear();
+            // 部分文字列を1文字ずつ短くする
+            for (int i = end; i > start; i--) {
+                String sumiji = text.subSequence(start, i).toString();
+                BrailleInfo info;
+                if (sumiji.equals("\n\r") || sumiji.equals("\r\n") || sumiji.equals("\n") || sumiji.equals("\r")) {
+                    info = BrailleInfo.LINEBREAK;
                 } else {
-                    this.checkGaijifu();
-                    this.checkSuufu();
-                    if (info != BrailleInfo.LINEBREAK || false == ignoreLineBreak) {
-                        this.addBraille(info);
+                    info = tr.table.getBrailleInfo(sumiji);
+                    if (false == MATCHABLE.test(info)) {
+                        continue;
                     }
                 }
-                //                // 改行の処理
-                //                if (info != BrailleInfo.LINEBREAK || false == ignoreLineBreak)
-                //                {
-                //                    this.addBraille(info);
-                //                }
+                match.end = i;
+                match.value = info;
+                return true;
             }
-            if (end == text.length()) {
-                break;
+            return false;
+        }
+
+        int nMatch = (tr.table.matchSumiji(text, start, end, MATCHABLE, match) ? match.end - start : 0);
+        int nLineBreak = lineBreakLength(text, start, end);
+        if (nMatch > nLineBreak) {
+            return true;
+        } else if (0 < nLineBreak) {
+            match.end = start + nLineBreak;
+            match.value = BrailleInfo.LINEBREAK;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+    * startから始まる改行の長さを取得する
+    *
+    * @param text 墨字のテキスト
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @return 2="\r\n"か"\n\r" 1="\n"か"\r" 0=改行ではない
+    */
+    private static int lineBreakLength(CharSequence text, int start, int end) {
+        char c = text.charAt(start);
+        if ('\n' != c && '\r' != c) {
+            return 0;
+        }
+        if ((start + 1) < end) {
+            char next = text.charAt(start + 1);
+            if (('\n' == c && '\r' == next) || ('\r' == c && '\n' == next)) {
+                return 2;
             }
         }
-        this.checkGaijifu();
-        this.checkSuufu();
 
-        return nBraille;
+        return 1;
     }
 
     /**
     * 点字列を墨字に翻訳する<br>
-    * ・辞書に未登録の点字があればBrailleInfo.UNKNOWNにする
+    * ・辞書に未登録の点字があればBrailleInfo.UNKNOWNにする<br>
+    * ・BrailleInfoの番号が同じマスの範囲で、符号を含めたマスの列を最長一致検索する
     *
     * @param boxList
     * @return
     */
     public List<BrailleInfo> sumijiFromBraille(List<BrailleBox> boxList) {
         List<BrailleInfo> list = Util.newArrayList();
+        CompiledBrailleDict table = this.compiled();
+        PrefixTrie.Match<BrailleInfo> match = new PrefixTrie.Match<BrailleInfo>();
 
         int start = 0;
         int count = 0;
@@ -198,7 +884,7 @@ public final class BrailleTranslater {
                 count = i - start;
                 if (0 < count) {
                     List<BrailleBox> line = boxList.subList(start, start + count);
-                    list.addAll(this.sumijiLineFromBraille(line));
+                    sumijiLineFromBraille(table, line, list, match);
                 }
                 list.add(BrailleInfo.LINEBREAK);
                 start = i + 1;
@@ -210,15 +896,21 @@ public final class BrailleTranslater {
                 list.add(BrailleInfo.LINEBREAK);
             } else {
                 List<BrailleBox> line = boxList.subList(start, start + count);
-                list.addAll(this.sumijiLineFromBraille(line));
+                sumijiLineFromBraille(table, line, list, match);
             }
         }
 
         return list;
     }
 
-    private List<BrailleInfo> sumijiLineFromBraille(List<BrailleBox> boxList) {
-        List<BrailleInfo> list = Util.newArrayList();
+    private static void sumijiLineFromBraille(CompiledBrailleDict table, List<BrailleBox> boxList,
+            List<BrailleInfo> list, PrefixTrie.Match<BrailleInfo> match) {
+        // 行のマスを1回だけパック値の列にする
+        StringBuilder buf = new StringBuilder(boxList.size());
+        for (BrailleBox box : boxList) {
+            buf.append(BrailleInfo.packCell(box.getDots()));
+        }
+        String cells = buf.toString();
 
         int start = 0;
         while (true) {
@@ -231,33 +923,147 @@ public final class BrailleTranslater {
                 }
                 count++;
             }
-            count = Math.min(this.dict.getMaxBoxCount(), count);
-
-            while (true) {
-                List<BrailleBox> seq = boxList.subList(start, start + count);
-                BrailleInfo info = this.dict.getBraille(seq);
-                if (null == info) {
-                    count--;
-                    if (0 == count) {
-                        Util.logInfo("UNKNOWN");
-                        list.add(BrailleInfo.UNKNOWN);
-                        start++;
-                        break;
-                    }
-                } else {
-                    list.add(info);
-                    start += count;
-                    break;
-                }
+            count = Math.min(table.getMaxBoxCount(), count);
+
+            if (table.matchCells(cells, start, start + count, match)) {
+                list.add(match.value);
+                start = match.end;
+            } else {
+                Util.logInfo("UNKNOWN");
+                list.add(BrailleInfo.UNKNOWN);
+                start++;
             }
             if (start >= boxList.size()) {
                 break;
             }
         }
+    }
+
+    /**
+    * マスの点のリストの列を墨字に翻訳する<br>
+    * ・BrailleInfoの番号などの区切りを持たないマスの列(読み取った点字など)を、
+    * 符号を含めたマスの列の最長一致検索で翻訳する<br>
+    * ・外字符、大文字符を2つ続けたもの、数符の後は、符号が続く範囲として符号を省いたマスの列でも検索する。
+    * 範囲は空白、改行、範囲の墨字でないマスで終わり、外字符で大文字の範囲が終わる。
+    * MODE.FORMULAでは外字符がなくても外字符の範囲とみなす<br>
+    * ・符号のマスはリストに含めない<br>
+    * ・辞書に未登録の点字があればBrailleInfo.UNKNOWNにする。点のない未登録のマスはBrailleInfo.SPACEにする。
+    * 点の番号が1からBrailleInfo.MAX_DOT_NUMBERの範囲外のマスもBrailleInfo.UNKNOWNにする
+    *
+    * @param cells マスの点のリストの列(nullの要素は改行)
+    * @return 墨字のリスト
+    */
+    public List<BrailleInfo> sumijiFromCells(List<int[]> cells) {
+        List<BrailleInfo> list = Util.newArrayList();
+        CompiledBrailleDict table = this.compiled();
+        Set<BrailleInfo.EXTRA> base = (MODE.FORMULA == this.mode ? CompiledBrailleDict.GAIJI_RUN : null);
+        PrefixTrie.Match<BrailleInfo> match = new PrefixTrie.Match<BrailleInfo>();
+
+        StringBuilder line = new StringBuilder();
+        for (int[] dots : cells) {
+            if (null == dots) {
+                sumijiLineFromCells(table, line.toString(), base, list, match);
+                list.add(BrailleInfo.LINEBREAK);
+                line.setLength(0);
+            } else {
+                line.append(BrailleInfo.packCell(dots));
+            }
+        }
+        sumijiLineFromCells(table, line.toString(), base, list, match);
 
         return list;
     }
 
+    /**
+    * 1行のパック値の列を墨字に翻訳する
+    *
+    * @param table 辞書
+    * @param cells パック値の列
+    * @param base 行の始めの符号が続く範囲(ない場合はnull)
+    * @param list 墨字のリスト
+    * @param match 検索の結果
+    */
+    private static void sumijiLineFromCells(CompiledBrailleDict table, String cells, Set<BrailleInfo.EXTRA> base,
+            List<BrailleInfo> list, PrefixTrie.Match<BrailleInfo> match) {
+        String gaijiFlag = getExtraCells(table, BrailleInfo.EXTRA.GAIJIFU);
+        String oomojiFlag = getExtraCells(table, BrailleInfo.EXTRA.OOMOJIFU);
+        String suuFlag = getExtraCells(table, BrailleInfo.EXTRA.SUUFU);
+
+        Set<BrailleInfo.EXTRA> run = base;
+        for (int start = 0; start < cells.length();) {
+            int end = Math.min(cells.length(), start + table.getMaxCellLen());
+            if ((null != run && table.matchCells(cells, start, end, run, match))
+                    || (null != base && base != run && table.matchCells(cells, start, end, base, match))
+                    || table.matchCells(cells, start, end, match)) {
+                list.add(match.value);
+                start = match.end;
+                run = nextRun(run, base, match.value);
+            } else if (null != gaijiFlag && cells.startsWith(gaijiFlag, start)) {
+                // 外字符は外字符の範囲の始めか、大文字の範囲の終わり
+                run = CompiledBrailleDict.GAIJI_RUN;
+                start += gaijiFlag.length();
+            } else if (null != oomojiFlag && cells.startsWith(oomojiFlag, start)) {
+                // 大文字符が1つなら次の墨字は外字符の範囲の前置木で見つかるので、2つ続く場合が大文字の範囲
+                int n = 0;
+                while (cells.startsWith(oomojiFlag, start)) {
+                    start += oomojiFlag.length();
+                    n++;
+                }
+                run = (2 <= n ? CompiledBrailleDict.OOMOJI_RUN : CompiledBrailleDict.GAIJI_RUN);
+            } else if (null != suuFlag && cells.startsWith(suuFlag, start)) {
+                run = CompiledBrailleDict.SUUJI_RUN;
+                start += suuFlag.length();
+            } else if (0 == cells.charAt(start)) {
+                // 点のない未登録のマスは空白
+                list.add(BrailleInfo.SPACE);
+                start++;
+                run = base;
+            } else {
+                Util.logInfo("UNKNOWN");
+                list.add(BrailleInfo.UNKNOWN);
+                start++;
+                run = base;
+            }
+        }
+    }
+
+    /**
+    * 墨字の後の符号が続く範囲を取得する
+    *
+    * @param run 墨字の前の範囲(ない場合はnull)
+    * @param base 行の始めの範囲(ない場合はnull)
+    * @param info 墨字
+    * @return 符号が続く範囲(ない場合はnull)
+    */
+    private static Set<BrailleInfo.EXTRA> nextRun(Set<BrailleInfo.EXTRA> run, Set<BrailleInfo.EXTRA> base,
+            BrailleInfo info) {
+        if (info.haveExtra(BrailleInfo.EXTRA.SUUFU)) {
+            return CompiledBrailleDict.SUUJI_RUN;
+        }
+        if (info.haveExtra(BrailleInfo.EXTRA.GAIJIFU)) {
+            if (CompiledBrailleDict.OOMOJI_RUN == run && info.haveExtra(BrailleInfo.EXTRA.OOMOJIFU)) {
+                return CompiledBrailleDict.OOMOJI_RUN;
+            }
+            return CompiledBrailleDict.GAIJI_RUN;
+        }
+
+        return base;
+    }
+
+    /**
+    * 符号のマスのパック値の列を取得する
+    *
+    * @return 符号が登録されていないかマスがない場合はnull
+    */
+    private static String getExtraCells(CompiledBrailleDict table, BrailleInfo.EXTRA extra) {
+        BrailleInfo info = table.getExtra(extra);
+        if (null == info || info.isEmpty()) {
+            return null;
+        }
+
+        return info.getPackedCells();
+    }
+
     /**
     * BrailleInfoのリストからテキストを取得する
     *
@@ -283,107 +1089,101 @@ public final class BrailleTranslater {
     */
     public List<BrailleInfo> getBrailleFromNABCC(String nabcc) {
         List<BrailleInfo> list = Util.newArrayList();
+        CompiledBrailleDict table = this.compiled();
+        PrefixTrie.Match<BrailleInfo> match = new PrefixTrie.Match<BrailleInfo>();
         for (int start = 0; start < nabcc.length();) {
-            int end = Math.min(nabcc.length(), start + this.dict.getMaxNABCCLen());
-
-            while (end > start) {
-                String t = nabcc.substring(start, end);
-                if (t.startsWith(" ")) {
-                    list.add(BrailleInfo.SPACE);
-                    start++;
-                    break;
-                }
+            if (' ' == nabcc.charAt(start)) {
+                list.add(BrailleInfo.SPACE);
+                start++;
+                continue;
+            }
 
-                BrailleInfo info = this.dict.getBraille(t);
-                if (null != info) {
-                    list.add(info);
-                    start = end;
-                    break;
-                }
-                end--;
-                if (end == start) {
-                    list.add(BrailleInfo.UNKNOWN);
-                    start++;
-                    break;
-                }
+            // 前置木をたどって最長一致検索
+            int end = Math.min(nabcc.length(), start + table.getMaxNABCCLen());
+            if (table.matchNABCC(nabcc, start, end, match)) {
+                list.add(match.value);
+                start = match.end;
+            } else {
+                list.add(BrailleInfo.UNKNOWN);
+                start++;
             }
         }
 
         return list;
     }
 
-    private void checkGaijifu() {
-        int nExtra = Math.min(2, this.gaijiQueue.size());
+    private static void checkGaijifu(Translation tr) {
+        int nExtra = Math.min(2, tr.gaijiQueue.size());
         if (0 < nExtra) {
-            BrailleInfo gaijiFlag = this.dict.getExtra(BrailleInfo.EXTRA.GAIJIFU);
-            switch (this.mode) {
+            BrailleInfo gaijiFlag = tr.table.getExtra(BrailleInfo.EXTRA.GAIJIFU);
+            switch (tr.mode) {
             case TEXT:
                 for (int j = 0; j < nExtra; j++) {
-                    this.codeList.add(gaijiFlag);
+                    tr.codeList.add(gaijiFlag);
                 }
                 break;
             case FORMULA:
-                //                if (0 < this.codeList.size())
+                //                if (0 < tr.codeList.size())
                 //                {
-                //                    BrailleInfo prev = this.codeList.get(this.codeList.size()-1);
+                //                    BrailleInfo prev = tr.codeList.get(tr.codeList.size()-1);
                 //                    if (false == prev.haveExtra(BrailleInfo.EXTRA.GAIJIFU))
                 //                    {
-                //                        this.codeList.add(gaijiFlag);
+                //                        tr.codeList.add(gaijiFlag);
                 //                    }
                 //                }
             }
 
             // 大文字符の処理
-            BrailleInfo oomojiFlag = this.dict.getExtra(BrailleInfo.EXTRA.OOMOJIFU);
+            BrailleInfo oomojiFlag = tr.table.getExtra(BrailleInfo.EXTRA.OOMOJIFU);
             int oomojiIndex = 0;
             int nOomoji = 0;
-            for (int i = (this.gaijiQueue.size() - 1); i >= 0; i--) {
-                BrailleInfo info = this.gaijiQueue.get(i);
+            for (int i = (tr.gaijiQueue.size() - 1); i >= 0; i--) {
+                BrailleInfo info = tr.gaijiQueue.get(i);
                 if (info.haveExtra(BrailleInfo.EXTRA.OOMOJIFU)) {
                     if (0 == nOomoji) {
                         oomojiIndex = i;
                     }
                     nOomoji = Math.min(2, nOomoji + 1);
                 } else {
-                    if (2 == nOomoji && oomojiIndex < (this.gaijiQueue.size() - 1)) {
-                        this.gaijiQueue.add(oomojiIndex + 1, gaijiFlag);
+                    if (2 == nOomoji && oomojiIndex < (tr.gaijiQueue.size() - 1)) {
+                        tr.gaijiQueue.add(oomojiIndex + 1, gaijiFlag);
                     }
                     oomojiIndex = 0;
                     for (int j = 0; j < nOomoji; j++) {
-                        this.gaijiQueue.add(i + 1, oomojiFlag);
+                        tr.gaijiQueue.add(i + 1, oomojiFlag);
                     }
                     nOomoji = 0;
                 }
             }
-            if (2 == nOomoji && oomojiIndex < (this.gaijiQueue.size() - 1)) {
-                this.gaijiQueue.add(oomojiIndex + 1, gaijiFlag);
+            if (2 == nOomoji && oomojiIndex < (tr.gaijiQueue.size() - 1)) {
+                tr.gaijiQueue.add(oomojiIndex + 1, gaijiFlag);
             }
             for (int j = 0; j < nOomoji; j++) {
-                this.gaijiQueue.add(0, oomojiFlag);
+                tr.gaijiQueue.add(0, oomojiFlag);
             }
 
-            this.addBraile(this.gaijiQueue);
-            this.gaijiQueue.clear();
+            addBraile(tr, tr.gaijiQueue);
+            tr.gaijiQueue.clear();
         }
 
     }
 
-    private void checkSuufu() {
-        if (0 < this.suufuQueue.size()) {
-            BrailleInfo extra = this.dict.getExtra(BrailleInfo.EXTRA.SUUFU);
-            this.codeList.add(extra);
-            this.addBraile(this.suufuQueue);
-            this.suufuQueue.clear();
+    private static void checkSuufu(Translation tr) {
+        if (0 < tr.suufuQueue.size()) {
+            BrailleInfo extra = tr.table.getExtra(BrailleInfo.EXTRA.SUUFU);
+            tr.codeList.add(extra);
+            addBraile(tr, tr.suufuQueue);
+            tr.suufuQueue.clear();
         }
     }
 
-    private void addBraile(List<BrailleInfo> list) {
+    private static void addBraile(Translation tr, List<BrailleInfo> list) {
         for (BrailleInfo info : list) {
-            this.addBraille(info);
+            addBraille(tr, info);
         }
     }
 
-    private void addBraille(BrailleInfo info) {
-        this.codeList.add(info);
+    private static void addBraille(Translation tr, BrailleInfo info) {
+        tr.codeList.add(info);
     }
 }
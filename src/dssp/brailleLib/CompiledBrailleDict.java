@@ -0,0 +1,583 @@
+package dssp.brailleLib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 索引を作り終えた辞書のスナップショット<br>
+ * ・BrailleDict.compile()で生成する<br>
+ * ・生成後は変更しないので、複数のスレッドから同時に、ロックなしで検索できる<br>
+ * ・登録されているBrailleInfoは元の辞書と共有する。辞書に登録したBrailleInfoは変更できないので、
+ * 変更はBrailleDict.replaceBrailleInfo()などで行い、compile()で新しいスナップショットを作る<br>
+ * ・上書き辞書のスナップショットは、自分の索引と土台の辞書のスナップショットとを重ねて検索する。
+ * 土台の索引は複製せずに共有し、墨字が同じ場合は上の辞書を優先する<br>
+ * ・土台の辞書の、符号を含めたNABCCとマスの列の索引は、土台の辞書の符号で作る。
+ * 上書き辞書で符号を変更した場合、変更した符号を持つ土台のBrailleInfoはgetBraille()で見つからない
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public final class CompiledBrailleDict {
+    /**
+    * 符号が続く範囲<br>
+    * ・外字符の範囲、大文字符を2つ続けた範囲(外字符の範囲の中)、数符の範囲
+    */
+    static final Set<BrailleInfo.EXTRA> GAIJI_RUN = Collections
+            .unmodifiableSet(EnumSet.of(BrailleInfo.EXTRA.GAIJIFU));
+    static final Set<BrailleInfo.EXTRA> OOMOJI_RUN = Collections
+            .unmodifiableSet(EnumSet.of(BrailleInfo.EXTRA.GAIJIFU, BrailleInfo.EXTRA.OOMOJIFU));
+    static final Set<BrailleInfo.EXTRA> SUUJI_RUN = Collections
+            .unmodifiableSet(EnumSet.of(BrailleInfo.EXTRA.SUUFU));
+    private static final List<Set<BrailleInfo.EXTRA>> RUNS = Collections
+            .unmodifiableList(Arrays.asList(GAIJI_RUN, OOMOJI_RUN, SUUJI_RUN));
+
+    /**
+    * 1つの辞書の索引<br>
+    * ・土台の辞書を含まない。スナップショットは土台の辞書のスナップショットと重ねて検索する<br>
+    * ・土台のない辞書の索引は、BrailleDictBinaryでバイナリ形式の辞書に書き出し、読み込んだものからスナップショットを作れる
+    */
+    static final class Index {
+        /**
+        * 墨字からBrailleInfoへの索引と、その前置木
+        */
+        final Map<String, BrailleInfo> sumijiMap;
+        final PrefixTrie<BrailleInfo> sumijiTrie;
+        /**
+        * 符号を含めたマスのパック値の列からBrailleInfoへの索引と、その前置木
+        */
+        final Map<String, BrailleInfo> cellMap;
+        final PrefixTrie<BrailleInfo> cellTrie;
+        /**
+        * 符号が続く範囲ごとの、範囲の符号を省いたマスのパック値の列からBrailleInfoへの前置木<br>
+        * ・範囲の符号を全て持つBrailleInfoだけを登録する
+        */
+        final Map<Set<BrailleInfo.EXTRA>, PrefixTrie<BrailleInfo>> runTries;
+        /**
+        * 符号を含めたNABCCからBrailleInfoへの索引と、その前置木
+        */
+        final Map<String, BrailleInfo> nabccMap;
+        final PrefixTrie<BrailleInfo> nabccTrie;
+        /**
+        * 符号を含めたマスの数の最大値
+        */
+        final int maxCellLen;
+        /**
+        * 改行を含む墨字があるか
+        */
+        final boolean lineBreakSumiji;
+
+        Index(Map<String, BrailleInfo> sumijiMap, PrefixTrie<BrailleInfo> sumijiTrie, Map<String, BrailleInfo> cellMap,
+                PrefixTrie<BrailleInfo> cellTrie, Map<Set<BrailleInfo.EXTRA>, PrefixTrie<BrailleInfo>> runTries,
+                Map<String, BrailleInfo> nabccMap, PrefixTrie<BrailleInfo> nabccTrie, int maxCellLen,
+                boolean lineBreakSumiji) {
+            this.sumijiMap = Collections.unmodifiableMap(sumijiMap);
+            this.sumijiTrie = sumijiTrie;
+            this.cellMap = Collections.unmodifiableMap(cellMap);
+            this.cellTrie = cellTrie;
+            this.runTries = Collections.unmodifiableMap(runTries);
+            this.nabccMap = Collections.unmodifiableMap(nabccMap);
+            this.nabccTrie = nabccTrie;
+            this.maxCellLen = maxCellLen;
+            this.lineBreakSumiji = lineBreakSumiji;
+        }
+    }
+
+    private final BrailleDict dict;
+    /**
+    * 自分の辞書の索引
+    */
+    private final Index index;
+    /**
+    * 上から順に重ねた辞書(先頭は自分)
+    */
+    private final CompiledBrailleDict[] layers;
+    /**
+    * layers[i]の検索で、上の辞書と墨字が同じBrailleInfoを除く条件(layers[0]はnull)
+    */
+    private final List<Predicate<BrailleInfo>> visibleFilters;
+    private final EnumMap<BrailleInfo.EXTRA, BrailleInfo> extraMap = new EnumMap<BrailleInfo.EXTRA, BrailleInfo>(
+            BrailleInfo.EXTRA.class);
+
+    /**
+    * indexの内容(検索で使うので、フィールドに展開しておく)
+    */
+    private final Map<String, BrailleInfo> sumijiMap;
+    private final PrefixTrie<BrailleInfo> sumijiTrie;
+    private final Map<String, BrailleInfo> cellMap;
+    private final PrefixTrie<BrailleInfo> cellTrie;
+    private final Map<Set<BrailleInfo.EXTRA>, PrefixTrie<BrailleInfo>> runTries;
+    private final Map<String, BrailleInfo> nabccMap;
+    private final PrefixTrie<BrailleInfo> nabccTrie;
+
+    private final int maxSumijiLen;
+    private final int maxBoxCount;
+    private final int maxNABCCLen;
+    /**
+    * 符号を含めたマスの数の最大値(土台の辞書を含む)
+    */
+    private final int maxCellLen;
+    /**
+    * 改行を含む墨字があるか(土台の辞書を含む)
+    */
+    private final boolean lineBreakSumiji;
+
+    /**
+    * スナップショットを生成する
+    *
+    * @param dict 元の辞書
+    * @param base 土台の辞書のスナップショット(ない場合はnull)
+    * @param infos 登録されているBrailleInfo(墨字の順)
+    * @param extras 符号
+    * @param maxSumijiLen 墨字の長さの最大値
+    * @param maxBoxCount 点字マスの数の最大値
+    * @param maxNABCCLen 符号を含めたNABCCの長さの最大値
+    */
+    CompiledBrailleDict(BrailleDict dict, CompiledBrailleDict base, Iterable<BrailleInfo> infos,
+            Map<BrailleInfo.EXTRA, BrailleInfo> extras, int maxSumijiLen, int maxBoxCount, int maxNABCCLen) {
+        this(dict, base, infos, null, extras, maxSumijiLen, maxBoxCount, maxNABCCLen);
+    }
+
+    /**
+    * 作り終えた索引から、土台のない辞書のスナップショットを生成する<br>
+    * ・バイナリ形式の辞書から読み込んだ索引を使い、索引を作り直さない
+    *
+    * @param dict 元の辞書(索引のBrailleInfoが登録されていること)
+    * @param index 索引
+    * @param extras 符号
+    * @param maxSumijiLen 墨字の長さの最大値
+    * @param maxBoxCount 点字マスの数の最大値
+    * @param maxNABCCLen 符号を含めたNABCCの長さの最大値
+    */
+    CompiledBrailleDict(BrailleDict dict, Index index, Map<BrailleInfo.EXTRA, BrailleInfo> extras, int maxSumijiLen,
+            int maxBoxCount, int maxNABCCLen) {
+        this(dict, null, null, index, extras, maxSumijiLen, maxBoxCount, maxNABCCLen);
+    }
+
+    private CompiledBrailleDict(BrailleDict dict, CompiledBrailleDict base, Iterable<BrailleInfo> infos, Index index,
+            Map<BrailleInfo.EXTRA, BrailleInfo> extras, int maxSumijiLen, int maxBoxCount, int maxNABCCLen) {
+        this.dict = dict;
+        this.extraMap.putAll(extras);
+        if (null == base) {
+            this.layers = new CompiledBrailleDict[] { this };
+            this.maxSumijiLen = maxSumijiLen;
+            this.maxBoxCount = maxBoxCount;
+            this.maxNABCCLen = maxNABCCLen;
+        } else {
+            this.layers = new CompiledBrailleDict[base.layers.length + 1];
+            this.layers[0] = this;
+            System.arraycopy(base.layers, 0, this.layers, 1, base.layers.length);
+            for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+                if (false == this.extraMap.containsKey(extra) && null != base.getExtra(extra)) {
+                    this.extraMap.put(extra, base.getExtra(extra));
+                }
+            }
+            this.maxSumijiLen = Math.max(maxSumijiLen, base.getMaxSumijiLen());
+            this.maxBoxCount = Math.max(maxBoxCount, base.getMaxBoxCount());
+            this.maxNABCCLen = Math.max(maxNABCCLen, base.getMaxNABCCLen());
+        }
+
+        this.index = (null == index ? this.buildIndex(infos) : index);
+        this.sumijiMap = this.index.sumijiMap;
+        this.sumijiTrie = this.index.sumijiTrie;
+        this.cellMap = this.index.cellMap;
+        this.cellTrie = this.index.cellTrie;
+        this.runTries = this.index.runTries;
+        this.nabccMap = this.index.nabccMap;
+        this.nabccTrie = this.index.nabccTrie;
+        this.maxCellLen = Math.max(this.index.maxCellLen, (null == base ? 0 : base.getMaxCellLen()));
+        this.lineBreakSumiji = (this.index.lineBreakSumiji || (null != base && base.haveLineBreakSumiji()));
+
+        this.visibleFilters = Util.newArrayList();
+        this.visibleFilters.add(null);
+        for (int i = 1; i < this.layers.length; i++) {
+            final int nUpper = i;
+            this.visibleFilters.add(new Predicate<BrailleInfo>() {
+                @Override
+                public boolean test(BrailleInfo info) {
+                    for (int j = 0; j < nUpper; j++) {
+                        if (CompiledBrailleDict.this.layers[j].sumijiMap.containsKey(info.getSumiji())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+    * 自分の辞書のBrailleInfoから索引を作る<br>
+    * ・符号はextraMapに設定済であること
+    *
+    * @param infos 登録されているBrailleInfo(墨字の順)
+    * @return 索引
+    */
+    private Index buildIndex(Iterable<BrailleInfo> infos) {
+        // 同じキーのBrailleInfoが複数ある場合は、墨字の順で最初のもの
+        Map<String, BrailleInfo> sumijiMap = Util.newHashMap();
+        Map<String, BrailleInfo> cellMap = Util.newHashMap();
+        Map<String, BrailleInfo> nabccMap = Util.newHashMap();
+        Map<Set<BrailleInfo.EXTRA>, Map<String, BrailleInfo>> runMaps = Util.newHashMap();
+        for (Set<BrailleInfo.EXTRA> run : RUNS) {
+            runMaps.put(run, Util.<String, BrailleInfo> newHashMap());
+        }
+        boolean lineBreakSumiji = false;
+        int maxCellLen = 0;
+        for (BrailleInfo info : infos) {
+            sumijiMap.put(info.getSumiji(), info);
+            if (false == lineBreakSumiji && null != info.getSumiji()) {
+                lineBreakSumiji = (0 <= info.getSumiji().indexOf('\n') || 0 <= info.getSumiji().indexOf('\r'));
+            }
+            if (false == this.haveExtraOf(info)) {
+                continue;
+            }
+            String cells = info.getPackedCells();
+            if (null != cells && false == cellMap.containsKey(cells)) {
+                cellMap.put(cells, info);
+                maxCellLen = Math.max(maxCellLen, cells.length());
+            }
+            String nabcc = info.getNABCC(true);
+            if (false == nabccMap.containsKey(nabcc)) {
+                nabccMap.put(nabcc, info);
+            }
+            for (Set<BrailleInfo.EXTRA> run : RUNS) {
+                if (haveExtras(info, run)) {
+                    Map<String, BrailleInfo> runMap = runMaps.get(run);
+                    String runCells = info.getPackedCells(run);
+                    if (null != runCells && false == runMap.containsKey(runCells)) {
+                        runMap.put(runCells, info);
+                    }
+                }
+            }
+        }
+        Map<Set<BrailleInfo.EXTRA>, PrefixTrie<BrailleInfo>> runTries = Util.newHashMap();
+        for (Set<BrailleInfo.EXTRA> run : RUNS) {
+            runTries.put(run, PrefixTrie.build(runMaps.get(run)));
+        }
+
+        return new Index(sumijiMap, PrefixTrie.build(sumijiMap), cellMap, PrefixTrie.build(cellMap), runTries,
+                nabccMap, PrefixTrie.build(nabccMap), maxCellLen, lineBreakSumiji);
+    }
+
+    /**
+    * 自分の辞書の索引を取得する<br>
+    * ・土台の辞書の索引は含まない
+    *
+    * @return 索引
+    */
+    Index getIndex() {
+        return this.index;
+    }
+
+    /**
+    * 符号が続く範囲の一覧を取得する<br>
+    * ・索引の書き出しと読み込みで、前置木の順に使う
+    *
+    * @return 範囲の符号の一覧
+    */
+    static List<Set<BrailleInfo.EXTRA>> getRuns() {
+        return RUNS;
+    }
+
+    /**
+    * 土台の辞書のスナップショットを取得する
+    *
+    * @return 土台がない場合はnull
+    */
+    CompiledBrailleDict getBase() {
+        return (1 < this.layers.length ? this.layers[1] : null);
+    }
+
+    /**
+    * BrailleInfoが持つ符号が全て登録されているかを確認する
+    *
+    * @param info BrailleInfo
+    * @return true=登録されている false=登録されていない符号がある
+    */
+    private boolean haveExtraOf(BrailleInfo info) {
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            if (info.haveExtra(extra) && null == this.getExtra(extra)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+    * BrailleInfoが指定した符号を全て持つかを確認する
+    *
+    * @param info BrailleInfo
+    * @param extras 符号
+    * @return true=全て持つ false=持たない符号がある
+    */
+    private static boolean haveExtras(BrailleInfo info, Set<BrailleInfo.EXTRA> extras) {
+        for (BrailleInfo.EXTRA extra : extras) {
+            if (false == info.haveExtra(extra)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+    * 元の辞書を取得する
+    *
+    * @return BrailleDict
+    */
+    public BrailleDict getDict() {
+        return this.dict;
+    }
+
+    /**
+    * 墨字の長さの最大値を取得する
+    *
+    * @return 墨字の長さ
+    */
+    public int getMaxSumijiLen() {
+        return this.maxSumijiLen;
+    }
+
+    /**
+    * 点字マスの数の最大値を取得する
+    *
+    * @return マスの数の最大値
+    */
+    public int getMaxBoxCount() {
+        return this.maxBoxCount;
+    }
+
+    /**
+    * 符号を含めたNABCCの長さの最大数を取得する
+    *
+    * @return NABCCの長さの最大数
+    */
+    public int getMaxNABCCLen() {
+        return this.maxNABCCLen;
+    }
+
+    /**
+    * 符号を含めたマスの数の最大値を取得する
+    *
+    * @return マスの数の最大値
+    */
+    int getMaxCellLen() {
+        return this.maxCellLen;
+    }
+
+    /**
+    * 改行を含む墨字があるかを確認する
+    *
+    * @return true=ある false=ない
+    */
+    boolean haveLineBreakSumiji() {
+        return this.lineBreakSumiji;
+    }
+
+    /**
+    * 外字符、大文字符などの符号のBrailleInfoを取得する
+    *
+    * @param extra 符号
+    * @return BrailleInfo 登録されていない場合はnull
+    */
+    public BrailleInfo getExtra(BrailleInfo.EXTRA extra) {
+        return this.extraMap.get(extra);
+    }
+
+    /**
+    * BrailleInfoを検索する<br>
+    * ・符号を指定した場合は、符号を持つBrailleInfoだけを検索する
+    *
+    * @param sumiji 墨字
+    * @param extras 符号
+    * @return BrailleInfo 見つからない場合はBrailleInfo.SPACE
+    */
+    public BrailleInfo getBrailleInfo(String sumiji, BrailleInfo.EXTRA... extras) {
+        BrailleInfo info = null;
+        for (CompiledBrailleDict layer : this.layers) {
+            info = layer.sumijiMap.get(sumiji);
+            if (null != info) {
+                break;
+            }
+        }
+        if (null == info) {
+            return BrailleInfo.SPACE;
+        }
+        if (null != extras) {
+            for (BrailleInfo.EXTRA extra : extras) {
+                if (false == info.haveExtra(extra)) {
+                    return BrailleInfo.SPACE;
+                }
+            }
+        }
+
+        return info;
+    }
+
+    /**
+    * 点字マスからBrailleInfoを検索する<br>
+    * ・点の番号が範囲外のマスを含む場合は見つからない
+    *
+    * @param boxList 点字マスのリスト
+    * @return 見つからない場合はnull
+    */
+    public BrailleInfo getBraille(List<BrailleBox> boxList) {
+        StringBuilder cells = new StringBuilder(boxList.size());
+        for (BrailleBox box : boxList) {
+            cells.append(BrailleInfo.packCell(box.getDots()));
+        }
+
+        return this.getBrailleByCells(cells.toString());
+    }
+
+    /**
+    * 符号を含めたNABCCからBrailleInfoを検索する
+    *
+    * @param nabcc NABCC
+    * @return 見つからない場合はnull
+    */
+    public BrailleInfo getBraille(String nabcc) {
+        for (int i = 0; i < this.layers.length; i++) {
+            BrailleInfo info = this.layers[i].nabccMap.get(nabcc);
+            if (null != info && (0 == i || this.visibleFilters.get(i).test(info))) {
+                return info;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+    * 符号を含めたマスのパック値の列からBrailleInfoを検索する
+    *
+    * @param cells パック値の列
+    * @return 見つからない場合はnull
+    */
+    BrailleInfo getBrailleByCells(String cells) {
+        for (int i = 0; i < this.layers.length; i++) {
+            BrailleInfo info = this.layers[i].cellMap.get(cells);
+            if (null != info && (0 == i || this.visibleFilters.get(i).test(info))) {
+                return info;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+    * 墨字のテキストのstartから始まる最長の墨字を検索する
+    *
+    * @param text 墨字のテキスト
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param accept BrailleInfoを一致とみなすかの条件(nullの場合は全て一致とみなす)
+    * @param match 検索の結果
+    * @return true=見つかった false=見つからない
+    */
+    boolean matchSumiji(CharSequence text, int start, int end, Predicate<? super BrailleInfo> accept,
+            PrefixTrie.Match<BrailleInfo> match) {
+        if (1 == this.layers.length) {
+            return this.sumijiTrie.longestMatch(text, start, end, accept, match);
+        }
+
+        // 各層の最長一致のうち最も長いもの 同じ長さなら上の層
+        int bestEnd = -1;
+        BrailleInfo bestValue = null;
+        for (int i = 0; i < this.layers.length; i++) {
+            if (this.layers[i].sumijiTrie.longestMatch(text, start, end, accept, this.visibleFilters.get(i), match)
+                    && match.end > bestEnd) {
+                bestEnd = match.end;
+                bestValue = match.value;
+            }
+        }
+        match.end = bestEnd;
+        match.value = bestValue;
+
+        return (0 <= bestEnd);
+    }
+
+    /**
+    * NABCC列のstartから始まる最長のNABCCを検索する
+    *
+    * @param nabcc NABCC列
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param match 検索の結果
+    * @return true=見つかった false=見つからない
+    */
+    boolean matchNABCC(CharSequence nabcc, int start, int end, PrefixTrie.Match<BrailleInfo> match) {
+        if (1 == this.layers.length) {
+            return this.nabccTrie.longestMatch(nabcc, start, end, null, match);
+        }
+
+        int bestEnd = -1;
+        BrailleInfo bestValue = null;
+        for (int i = 0; i < this.layers.length; i++) {
+            if (this.layers[i].nabccTrie.longestMatch(nabcc, start, end, null, this.visibleFilters.get(i), match)
+                    && match.end > bestEnd) {
+                bestEnd = match.end;
+                bestValue = match.value;
+            }
+        }
+        match.end = bestEnd;
+        match.value = bestValue;
+
+        return (0 <= bestEnd);
+    }
+
+    /**
+    * パック値の列のstartから始まる、符号を含めた最長のマスの列を検索する
+    *
+    * @param cells パック値の列
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param match 検索の結果
+    * @return true=見つかった false=見つからない
+    */
+    boolean matchCells(CharSequence cells, int start, int end, PrefixTrie.Match<BrailleInfo> match) {
+        return this.matchCells(cells, start, end, null, match);
+    }
+
+    /**
+    * 符号が続く範囲の中で、パック値の列のstartから始まる最長のマスの列を検索する<br>
+    * ・範囲の符号を全て持つBrailleInfoを、範囲の符号を省いたマスの列で検索する
+    *
+    * @param cells パック値の列
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param run 符号が続く範囲(GAIJI_RUNなど nullの場合は符号を含めたマスの列で検索する)
+    * @param match 検索の結果
+    * @return true=見つかった false=見つからない
+    */
+    boolean matchCells(CharSequence cells, int start, int end, Set<BrailleInfo.EXTRA> run,
+            PrefixTrie.Match<BrailleInfo> match) {
+        if (1 == this.layers.length) {
+            return this.layers[0].cellTrieOf(run).longestMatch(cells, start, end, null, match);
+        }
+
+        int bestEnd = -1;
+        BrailleInfo bestValue = null;
+        for (int i = 0; i < this.layers.length; i++) {
+            if (this.layers[i].cellTrieOf(run).longestMatch(cells, start, end, null, this.visibleFilters.get(i), match)
+                    && match.end > bestEnd) {
+                bestEnd = match.end;
+                bestValue = match.value;
+            }
+        }
+        match.end = bestEnd;
+        match.value = bestValue;
+
+        return (0 <= bestEnd);
+    }
+
+    private PrefixTrie<BrailleInfo> cellTrieOf(Set<BrailleInfo.EXTRA> run) {
+        return (null == run ? this.cellTrie : this.runTries.get(run));
+    }
+}
@@ -0,0 +1,206 @@
+package dssp.brailleLib;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * オブジェクトの複製<br>
+ * ・コピーコンストラクタや複製メソッドはクラスごとに1回だけ探してMethodHandleにし、ClassValueにキャッシュする<br>
+ * ・register()で登録した複製処理は、コピーコンストラクタより優先する<br>
+ * ・このパッケージの非publicなクラスも複製できる。それ以外で呼び出せないものは、アクセスチェックを外して呼び出す<br>
+ * ・複数のスレッドから同時に使える
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public final class Copier {
+    private static final MethodType COPY_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ConcurrentHashMap<Class<?>, UnaryOperator<?>> registered = new ConcurrentHashMap<Class<?>, UnaryOperator<?>>();
+
+    /**
+    * クラスごとのコピーコンストラクタ
+    */
+    private static final ClassValue<MethodHandle> copyConstructors = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            Constructor<?> constructor;
+            try {
+                constructor = type.getConstructor(type);
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalArgumentException(String.format("%sのコピーコンストラクタが見つからない", type.getName()),
+                        ex);
+            }
+            try {
+                return LOOKUP.unreflectConstructor(constructor).asType(COPY_TYPE);
+            } catch (IllegalAccessException ex) {
+                // publicなコンストラクタでも、クラスが他のパッケージの非publicなクラスの場合
+                try {
+                    constructor.setAccessible(true);
+                    return LOOKUP.unreflectConstructor(constructor).asType(COPY_TYPE);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    throw new IllegalArgumentException(
+                            String.format("%sのコピーコンストラクタを呼び出せない", type.getName()), e);
+                }
+            }
+        }
+    };
+
+    /**
+    * メソッド名ごとの、クラスごとの複製メソッド
+    */
+    private static final ConcurrentHashMap<String, ClassValue<MethodHandle>> copyMethods = new ConcurrentHashMap<String, ClassValue<MethodHandle>>();
+
+    private Copier() {
+    }
+
+    /**
+    * クラスの複製処理を登録する<br>
+    * ・登録したクラスのオブジェクトはcopy()で複製処理を使う(サブクラスには使わない)
+    *
+    * @param type クラス
+    * @param copier 複製処理(nullの場合は登録を削除する)
+    */
+    public static <T> void register(Class<T> type, UnaryOperator<T> copier) {
+        if (null == copier) {
+            registered.remove(type);
+        } else {
+            registered.put(type, copier);
+        }
+    }
+
+    /**
+    * 登録した複製処理か、コピーコンストラクタで複製する
+    *
+    * @param obj 複製元(nullの場合はnull)
+    * @return 複製
+    * @throws IllegalArgumentException コピーコンストラクタが見つからない場合
+    */
+    @SuppressWarnings("unchecked")
+    public static <T> T copy(T obj) {
+        if (null == obj) {
+            return null;
+        }
+        UnaryOperator<T> copier = (UnaryOperator<T>) registered.get(obj.getClass());
+        if (null != copier) {
+            return copier.apply(obj);
+        }
+
+        return (T) invoke(getCopyConstructor(obj.getClass()), obj);
+    }
+
+    /**
+    * 引数なしのメソッドで複製する<br>
+    * ・メソッドは返り値が複製するオブジェクトのクラスでなければならない
+    *
+    * @param method メソッド名
+    * @param obj 複製元(nullの場合はnull)
+    * @return 複製
+    * @throws IllegalArgumentException メソッドが見つからない、返り値のクラスが異なる場合
+    */
+    @SuppressWarnings("unchecked")
+    public static <T> T copyByMethod(String method, T obj) {
+        if (null == obj) {
+            return null;
+        }
+
+        return (T) invoke(getCopyMethod(method, obj.getClass()), obj);
+    }
+
+    /**
+    * Collectionの要素を複製して、複製先に追加する<br>
+    * ・複製先がArrayListの場合は、先に容量を確保する
+    *
+    * @param method 複製に使うメソッド名(nullの場合はcopy()で複製する)
+    * @param src 複製元
+    * @param dst 複製先
+    */
+    static <T> void copyAll(String method, Collection<T> src, Collection<T> dst) {
+        if (dst instanceof ArrayList) {
+            ((ArrayList<T>) dst).ensureCapacity(dst.size() + src.size());
+        }
+        for (T obj : src) {
+            dst.add(null == method ? copy(obj) : copyByMethod(method, obj));
+        }
+    }
+
+    /**
+    * クラスのコピーコンストラクタを取得する<br>
+    * ・クラスごとに1回だけ探し、同じMethodHandleを返す
+    *
+    * @param type クラス
+    * @return コピーコンストラクタ
+    * @throws IllegalArgumentException コピーコンストラクタが見つからない、呼び出せない場合
+    */
+    static MethodHandle getCopyConstructor(Class<?> type) {
+        return copyConstructors.get(type);
+    }
+
+    /**
+    * クラスの、引数なしの複製メソッドを取得する<br>
+    * ・メソッド名とクラスごとに1回だけ探し、同じMethodHandleを返す
+    *
+    * @param method メソッド名
+    * @param type クラス
+    * @return 複製メソッド
+    * @throws IllegalArgumentException メソッドが見つからない、呼び出せない、返り値のクラスが異なる場合
+    */
+    static MethodHandle getCopyMethod(String method, Class<?> type) {
+        return methodValue(method).get(type);
+    }
+
+    private static ClassValue<MethodHandle> methodValue(final String method) {
+        ClassValue<MethodHandle> value = copyMethods.get(method);
+        if (null != value) {
+            return value;
+        }
+
+        value = new ClassValue<MethodHandle>() {
+            @Override
+            protected MethodHandle computeValue(Class<?> type) {
+                Method m;
+                try {
+                    m = type.getMethod(method);
+                } catch (NoSuchMethodException ex) {
+                    throw new IllegalArgumentException(String.format("複製に指定されたメソッド%sが見つからない", method), ex);
+                }
+                // メソッドの返り値の代入互換性チェック
+                if (false == m.getReturnType().isAssignableFrom(type)) {
+                    throw new IllegalArgumentException("複製元と複製先の要素のクラスが異なる");
+                }
+                try {
+                    return LOOKUP.unreflect(m).asType(COPY_TYPE);
+                } catch (IllegalAccessException ex) {
+                    // publicなメソッドでも、宣言したクラスが他のパッケージの非publicなクラスの場合
+                    try {
+                        m.setAccessible(true);
+                        return LOOKUP.unreflect(m).asType(COPY_TYPE);
+                    } catch (IllegalAccessException | RuntimeException e) {
+                        throw new IllegalArgumentException(String.format("メソッド%sを呼び出せない", method), e);
+                    }
+                }
+            }
+        };
+        ClassValue<MethodHandle> prev = copyMethods.putIfAbsent(method, value);
+
+        return (null == prev ? value : prev);
+    }
+
+    private static Object invoke(MethodHandle handle, Object obj) {
+        try {
+            return (Object) handle.invokeExact(obj);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
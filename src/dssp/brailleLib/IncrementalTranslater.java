@@ -0,0 +1,265 @@
+package dssp.brailleLib;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 編集に合わせて点字の翻訳を更新する<br>
+ * ・テキストを区間(外字符、数符の処理が終わった墨字の区切りで分けた範囲)に分けて、区間ごとの翻訳の結果を覚えておく。
+ * 区切りから後の翻訳の結果は区切りより前のテキストによらない<br>
+ * ・編集位置から最長一致検索の先読みの文字数以上前の区切りから翻訳し直し、編集した範囲より後で、
+ * 編集前の区切りと同じ位置の区切りに着いたところで止めて、点字のリストを差し替える。
+ * 翻訳し直す範囲は、先読みの文字数、外字符や数符が続く範囲、区間の長さで決まり、テキストの長さによらない。
+ * 翻訳の結果はテキスト全体を翻訳した場合と同じ<br>
+ * ・区間を探す走査と、点字のリストへの挿入と削除(配列のコピー)は、テキストの長さに比例する<br>
+ * ・辞書を変更した場合はsetText()で全体を翻訳し直す<br>
+ * ・複数のスレッドから同時には使えない
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public final class IncrementalTranslater {
+    /**
+    * 区間の最小の長さ
+    */
+    private static final int SEGMENT_LEN = 64;
+
+    /**
+    * 区間の翻訳の結果
+    */
+    private static final class Segment {
+        /**
+        * 墨字の文字数、点字にした墨字の数、点字の数
+        */
+        final int length;
+        final int nBraille;
+        final int nCode;
+
+        Segment(int length, int nBraille, int nCode) {
+            this.length = length;
+            this.nBraille = nBraille;
+            this.nCode = nCode;
+        }
+    }
+
+    private final BrailleTranslater translater;
+    private final boolean ignoreLineBreak;
+    private final boolean includeExtra;
+    private final BrailleTranslater.UnknownListener listener;
+
+    private final StringBuilder text = new StringBuilder();
+    private final List<Segment> segments = Util.newArrayList();
+    private final List<BrailleInfo> codeList = Util.newArrayList();
+    private final List<BrailleInfo> work = Util.newArrayList();
+    private int nBraille = 0;
+
+    /**
+    * インスタンスを生成する
+    *
+    * @param translater 翻訳に使うBrailleTranslater
+    * @param ignoreLineBreak true=改行を無視する
+    * @param includeExtra true=点字リストに符号を含める
+    * @param listener 点字が見つからない墨字を受け取る(nullの場合は知らせない)
+    * @throws IllegalArgumentException translaterがnullの場合
+    */
+    public IncrementalTranslater(BrailleTranslater translater, boolean ignoreLineBreak, boolean includeExtra,
+            BrailleTranslater.UnknownListener listener) {
+        if (null == translater) {
+            throw new IllegalArgumentException("translaterがnull");
+        }
+        this.translater = translater;
+        this.ignoreLineBreak = ignoreLineBreak;
+        this.includeExtra = includeExtra;
+        this.listener = listener;
+    }
+
+    /**
+    * テキストを置き換えて、全体を翻訳する
+    *
+    * @param text 墨字のテキスト
+    * @return 点字にした墨字の数
+    */
+    public int setText(CharSequence text) {
+        this.text.setLength(0);
+        this.text.append(text);
+        this.segments.clear();
+        this.codeList.clear();
+        this.nBraille = 0;
+        this.retranslate(0, 0, 0, Integer.MAX_VALUE, 0);
+
+        return this.nBraille;
+    }
+
+    /**
+    * テキストを編集して、編集した範囲の前後だけを翻訳し直す<br>
+    * ・offsetからremoved文字をinsertedに置き換える
+    *
+    * @param offset 編集の開始位置
+    * @param removed 削除する文字数
+    * @param inserted 挿入するテキスト(nullの場合は削除だけ)
+    * @return 点字にした墨字の数
+    * @throws IndexOutOfBoundsException 削除する範囲がテキストの外の場合
+    */
+    public int edit(int offset, int removed, CharSequence inserted) {
+        int length = this.text.length();
+        if (0 > offset || 0 > removed || (offset + removed) > length) {
+            throw new IndexOutOfBoundsException(String.format("範囲がテキストの外 %d-%d", offset, offset + removed));
+        }
+        if (null == inserted) {
+            inserted = "";
+        }
+        if (0 == removed && 0 == inserted.length()) {
+            return this.nBraille;
+        }
+        if (0 == length) {
+            return this.setText(inserted);
+        }
+
+        // 区間の始めの墨字の検索は先読みの文字数までしか見ないので、
+        // 編集位置より先読みの文字数以上前に始まる区間までは翻訳の結果が変わらない
+        int safe = offset - this.translater.getLookahead();
+        int first = 0;
+        int firstStart = 0;
+        int firstCode = 0;
+        int pos = 0;
+        int code = 0;
+        for (int i = 0; i < this.segments.size() && pos <= safe; i++) {
+            first = i;
+            firstStart = pos;
+            firstCode = code;
+            Segment seg = this.segments.get(i);
+            pos += seg.length;
+            code += seg.nCode;
+        }
+
+        this.text.replace(offset, offset + removed, inserted.toString());
+        this.retranslate(first, firstStart, firstCode, offset + removed, inserted.length() - removed);
+
+        return this.nBraille;
+    }
+
+    /**
+    * 区間の始めから翻訳し直して、区間と点字を差し替える<br>
+    * ・編集前にtail以降で始まっていた区間の、編集後の開始位置の区切りに着いたら止めて、その区間から後はそのまま使う
+    *
+    * @param index 最初の区間の番号
+    * @param start 最初の区間の開始位置
+    * @param codeIndex 最初の区間の点字の位置
+    * @param tail 編集前のテキストの、編集した範囲の終了位置
+    * @param delta 編集による長さの変化
+    */
+    private void retranslate(int index, int start, int codeIndex, int tail, int delta) {
+        Resync sync = new Resync(index, start, tail, delta);
+        int n = this.translater.braileFromSumiji(this.text, start, this.work, this.ignoreLineBreak,
+                this.includeExtra, this.listener, sync);
+        if (false == sync.stopped) {
+            // テキストの最後まで翻訳した
+            sync.skipTo(this.segments.size());
+            if (sync.cut < this.text.length()) {
+                sync.added.add(new Segment(this.text.length() - sync.cut, n - sync.cutBraille,
+                        this.work.size() - sync.cutCode));
+            }
+        }
+
+        this.segments.subList(index, sync.old).clear();
+        this.segments.addAll(index, sync.added);
+        this.codeList.subList(codeIndex, codeIndex + sync.oldCode).clear();
+        this.codeList.addAll(codeIndex, this.work);
+        this.work.clear();
+        this.nBraille += n - sync.oldBraille;
+    }
+
+    /**
+    * 翻訳し直す間の、区切りの処理
+    */
+    private final class Resync implements BrailleTranslater.SyncListener {
+        private final int tail;
+        private final int delta;
+        /**
+        * 翻訳し直した区間
+        */
+        final List<Segment> added = Util.newArrayList();
+        /**
+        * 次の編集前の区間の番号と、その開始位置(編集前)、それより前の置き換える区間の点字にした墨字の数、点字の数
+        */
+        int old;
+        int oldStart;
+        int oldBraille = 0;
+        int oldCode = 0;
+        /**
+        * 最後に区間を分けた区切りと、その区切りまでの点字にした墨字の数、点字の数
+        */
+        int cut;
+        int cutBraille = 0;
+        int cutCode = 0;
+        boolean stopped = false;
+
+        Resync(int index, int start, int tail, int delta) {
+            this.old = index;
+            this.oldStart = start;
+            this.cut = start;
+            this.tail = tail;
+            this.delta = delta;
+        }
+
+        @Override
+        public boolean sync(int pos, int nCode, int nBraille) {
+            List<Segment> segments = IncrementalTranslater.this.segments;
+            while (this.old < segments.size()
+                    && (this.oldStart < this.tail || (this.oldStart + this.delta) < pos)) {
+                this.skipTo(this.old + 1);
+            }
+            this.stopped = (this.old < segments.size() && (this.oldStart + this.delta) == pos);
+            if (this.stopped || SEGMENT_LEN <= (pos - this.cut)) {
+                this.added.add(new Segment(pos - this.cut, nBraille - this.cutBraille, nCode - this.cutCode));
+                this.cut = pos;
+                this.cutBraille = nBraille;
+                this.cutCode = nCode;
+            }
+
+            return this.stopped;
+        }
+
+        /**
+        * 編集前の区間を置き換える区間に含める
+        *
+        * @param end 含める区間の終わりの番号(含まない)
+        */
+        void skipTo(int end) {
+            for (; this.old < end; this.old++) {
+                Segment seg = IncrementalTranslater.this.segments.get(this.old);
+                this.oldStart += seg.length;
+                this.oldBraille += seg.nBraille;
+                this.oldCode += seg.nCode;
+            }
+        }
+    }
+
+    /**
+    * テキストを取得する
+    *
+    * @return 墨字のテキスト
+    */
+    public String getText() {
+        return this.text.toString();
+    }
+
+    /**
+    * 点字のリストを取得する<br>
+    * ・変更できないリストで、編集すると内容が変わる
+    *
+    * @return 点字のリスト
+    */
+    public List<BrailleInfo> getBrailleList() {
+        return Collections.unmodifiableList(this.codeList);
+    }
+
+    /**
+    * 点字にした墨字の数を取得する
+    *
+    * @return 点字にした墨字の数
+    */
+    public int getBrailleCount() {
+        return this.nBraille;
+    }
+}
@@ -0,0 +1,64 @@
+package dssp.brailleLib;
+
+import java.util.Arrays;
+
+/**
+ * 長さごとの件数<br>
+ * ・件数を増減させながら、長さの最大値を求める<br>
+ * ・最大値の件数が0になった場合だけ、下に向かって次の最大値を探す
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+final class LengthHistogram {
+    private int[] counts = new int[16];
+    private int max = 0;
+
+    /**
+    * 長さを1件追加する
+    *
+    * @param len 長さ
+    */
+    void add(int len) {
+        if (this.counts.length <= len) {
+            this.counts = Arrays.copyOf(this.counts, Math.max(len + 1, this.counts.length * 2));
+        }
+        this.counts[len]++;
+        if (this.max < len) {
+            this.max = len;
+        }
+    }
+
+    /**
+    * 長さを1件削除する<br>
+    * ・追加されていない長さは無視する
+    *
+    * @param len 長さ
+    */
+    void remove(int len) {
+        if (this.counts.length <= len || 0 == this.counts[len]) {
+            return;
+        }
+        this.counts[len]--;
+        while (0 < this.max && 0 == this.counts[this.max]) {
+            this.max--;
+        }
+    }
+
+    /**
+    * 全て削除する
+    */
+    void clear() {
+        Arrays.fill(this.counts, 0);
+        this.max = 0;
+    }
+
+    /**
+    * 長さの最大値を取得する
+    *
+    * @return 最大値 1件もない場合は0
+    */
+    int getMax() {
+        return this.max;
+    }
+}
@@ -0,0 +1,276 @@
+package dssp.brailleLib;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 文字列をキーにした前置木<br>
+ * ・節の子を文字の昇順で配列に詰めて持ち、子の検索は二分探索で行う<br>
+ * ・生成後は変更しないので、複数のスレッドから同時に検索できる<br>
+ * ・配列のまま書き出して読み込めるので、読み込み時に木を作り直さずに済む
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ * @param <V> 値の型
+ */
+final class PrefixTrie<V> {
+    /**
+    * 最長一致検索の結果
+    *
+    * @param <V> 値の型
+    */
+    static final class Match<V> {
+        /**
+        * 一致した部分の終了位置(含まない) 一致しない場合は-1
+        */
+        int end = -1;
+        /**
+        * 一致したキーの値 一致しない場合はnull
+        */
+        V value = null;
+
+        void clear() {
+            this.end = -1;
+            this.value = null;
+        }
+    }
+
+    private static final class Node<V> {
+        final TreeMap<Character, Node<V>> next = Util.newTreeMap();
+        V value = null;
+    }
+
+    /**
+    * 節nの子は labels/children の [childStart[n], childStart[n+1]) にある
+    */
+    private final int[] childStart;
+    private final char[] labels;
+    private final int[] children;
+    private final Object[] values;
+
+    private PrefixTrie(int[] childStart, char[] labels, int[] children, Object[] values) {
+        this.childStart = childStart;
+        this.labels = labels;
+        this.children = children;
+        this.values = values;
+    }
+
+    /**
+    * キーと値の対応から前置木を生成する<br>
+    * ・空文字列のキーは無視する
+    *
+    * @param map キーと値の対応
+    * @return 前置木
+    */
+    static <V> PrefixTrie<V> build(Map<String, ? extends V> map) {
+        Node<V> root = new Node<V>();
+        int nNode = 1;
+        for (Entry<String, ? extends V> entry : map.entrySet()) {
+            String key = entry.getKey();
+            if (null == key || key.isEmpty()) {
+                continue;
+            }
+            Node<V> node = root;
+            for (int i = 0; i < key.length(); i++) {
+                Character c = key.charAt(i);
+                Node<V> child = node.next.get(c);
+                if (null == child) {
+                    child = new Node<V>();
+                    node.next.put(c, child);
+                    nNode++;
+                }
+                node = child;
+            }
+            node.value = entry.getValue();
+        }
+
+        // 幅優先で番号を付けて配列に詰める
+        int[] childStart = new int[nNode + 1];
+        char[] labels = new char[nNode - 1];
+        int[] children = new int[nNode - 1];
+        Object[] values = new Object[nNode];
+
+        Queue<Node<V>> queue = new ArrayDeque<Node<V>>();
+        queue.add(root);
+        int id = 0;
+        int nextId = 1;
+        while (false == queue.isEmpty()) {
+            Node<V> node = queue.poll();
+            values[id] = node.value;
+            childStart[id] = nextId - 1;
+            for (Entry<Character, Node<V>> entry : node.next.entrySet()) {
+                labels[nextId - 1] = entry.getKey();
+                children[nextId - 1] = nextId;
+                nextId++;
+                queue.add(entry.getValue());
+            }
+            id++;
+        }
+        childStart[nNode] = nNode - 1;
+
+        return new PrefixTrie<V>(childStart, labels, children, values);
+    }
+
+    /**
+    * 前置木を書き出す<br>
+    * ・節nの子の番号はn+1からの連番なので、子の番号は書かない
+    *
+    * <pre>
+    * int 節の数N, int[N+1] 子の開始位置, char[N-1] 子の文字, int[N] 値の番号(値がない節は-1)
+    * </pre>
+    *
+    * @param out 出力先
+    * @param valueIndex 値を番号にする
+    * @throws IOException 書き込みに失敗した場合
+    */
+    @SuppressWarnings("unchecked")
+    void write(DataOutputStream out, ToIntFunction<? super V> valueIndex) throws IOException {
+        out.writeInt(this.values.length);
+        for (int start : this.childStart) {
+            out.writeInt(start);
+        }
+        for (char label : this.labels) {
+            out.writeChar(label);
+        }
+        for (Object value : this.values) {
+            out.writeInt(null == value ? -1 : valueIndex.applyAsInt((V) value));
+        }
+    }
+
+    /**
+    * write()で書き出した前置木を読み込む<br>
+    * ・配列はまとめて読み、木は作り直さない
+    *
+    * @param buf 読み込むバッファ(読んだ分だけ位置を進める)
+    * @param valueList 値の番号ごとの値
+    * @return 前置木
+    * @throws IllegalArgumentException 前置木の形式が違う場合
+    */
+    static <V> PrefixTrie<V> read(ByteBuffer buf, List<? extends V> valueList) {
+        int nNode = buf.getInt();
+        if (1 > nNode) {
+            throw new IllegalArgumentException(String.format("前置木の節の数が不正 %d", nNode));
+        }
+        int[] childStart = new int[nNode + 1];
+        buf.asIntBuffer().get(childStart);
+        buf.position(buf.position() + childStart.length * 4);
+        char[] labels = new char[nNode - 1];
+        buf.asCharBuffer().get(labels);
+        buf.position(buf.position() + labels.length * 2);
+        int[] valueIndex = new int[nNode];
+        buf.asIntBuffer().get(valueIndex);
+        buf.position(buf.position() + valueIndex.length * 4);
+
+        // 子の範囲が重ならずに並んでいれば、子の番号は配列の範囲に収まる
+        if (0 != childStart[0] || (nNode - 1) != childStart[nNode]) {
+            throw new IllegalArgumentException("前置木の子の範囲が不正");
+        }
+        for (int i = 0; i < nNode; i++) {
+            if (childStart[i] > childStart[i + 1]) {
+                throw new IllegalArgumentException("前置木の子の範囲が不正");
+            }
+        }
+        int[] children = new int[nNode - 1];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = i + 1;
+        }
+        Object[] values = new Object[nNode];
+        for (int i = 0; i < nNode; i++) {
+            values[i] = (0 > valueIndex[i] ? null : valueList.get(valueIndex[i]));
+        }
+
+        return new PrefixTrie<V>(childStart, labels, children, values);
+    }
+
+    private int child(int node, char c) {
+        int low = this.childStart[node];
+        int high = this.childStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = this.labels[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return this.children[mid];
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+    * キーの値を取得する
+    *
+    * @param key キー
+    * @return 値 登録されていない場合はnull
+    */
+    @SuppressWarnings("unchecked")
+    V get(CharSequence key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            node = this.child(node, key.charAt(i));
+            if (0 > node) {
+                return null;
+            }
+        }
+
+        return (0 == node ? null : (V) this.values[node]);
+    }
+
+    /**
+    * textのstartからendまでの範囲で、startから始まる最長のキーを検索する
+    *
+    * @param text 検索する文字列
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param accept 値を一致とみなすかの条件(nullの場合は全て一致とみなす)
+    * @param match 検索の結果
+    * @return true=一致した false=一致しない
+    */
+    boolean longestMatch(CharSequence text, int start, int end, Predicate<? super V> accept, Match<V> match) {
+        return this.longestMatch(text, start, end, accept, null, match);
+    }
+
+    /**
+    * textのstartからendまでの範囲で、startから始まる最長のキーを検索する<br>
+    * ・値が両方の条件を満たす場合に一致とみなす
+    *
+    * @param text 検索する文字列
+    * @param start 開始位置
+    * @param end 終了位置(含まない)
+    * @param accept 値を一致とみなすかの条件(nullの場合は条件なし)
+    * @param filter 値を一致とみなすかのもう1つの条件(nullの場合は条件なし)
+    * @param match 検索の結果
+    * @return true=一致した false=一致しない
+    */
+    @SuppressWarnings("unchecked")
+    boolean longestMatch(CharSequence text, int start, int end, Predicate<? super V> accept,
+            Predicate<? super V> filter, Match<V> match) {
+        match.clear();
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            node = this.child(node, text.charAt(i));
+            if (0 > node) {
+                break;
+            }
+            V value = (V) this.values[node];
+            if (null != value && (null == accept || accept.test(value)) && (null == filter || filter.test(value))) {
+                match.end = i + 1;
+                match.value = value;
+            }
+        }
+
+        return (0 <= match.end);
+    }
+}
@@ -20,8 +20,6 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayDeque;
@@ -477,8 +475,7 @@ public final class Util {
     /**
     * 配列の深い複製<br>
     *
-    * ・各要素のコピーコンストラクタを呼び出して複製する<br>
-    * 　{@code deepCopy(Arrays.asList(src), Arrays.asList(dst))}と同じ<br>
+    * ・各要素のコピーコンストラクタを呼び出して複製する(Copier.register()で登録した複製処理を優先する)<br>
     * ・複製元と複製先との長さが異なる場合は、短い方の要素まで複製する<br>
     * ・例外が発生したらlogExceptionを使ってログに出力する<br>
     *
@@ -488,13 +485,25 @@ public final class Util {
     * @throws IllgalArgumentException 引数がnull、引数のクラスが異なる、
     */
     public static <T> boolean deepCopy(T[] src, T[] dst) {
-        return deepCopy(Arrays.asList(src), Arrays.asList(dst));
+        if (null == src || null == dst || false == src.getClass().equals(dst.getClass())) {
+            throw new IllegalArgumentException("引数がnull、または、クラスが異なる");
+        }
+        try {
+            for (int i = 0; i < Math.min(src.length, dst.length); i++) {
+                dst[i] = Copier.copy(src[i]);
+            }
+        } catch (Exception ex) {
+            Util.logException(ex);
+            return false;
+        }
+
+        return true;
     }
 
     /**
     * Collectionの深い複製<br>
     *
-    * ・各要素のコピーコンストラクタで複製する<br>
+    * ・各要素のコピーコンストラクタで複製する(Copier.register()で登録した複製処理を優先する)<br>
     * ・複製元の長さが0の場合は、複製先がクリアされる<br>
     * ・例外が発生したらlogExceptionを使ってログに出力する
     *
@@ -507,26 +516,12 @@ public final class Util {
         if (null == src || null == dst || false == src.getClass().equals(dst.getClass())) {
             throw new IllegalArgumentException("引数がnull、または、クラスが異なる");
         }
-        if (0 == src.size()) {
-            dst.clear();
-            return true;
-        }
-
         dst.clear();
-
-        for (T obj : src) {
-            try {
-                Class<?> classObj = obj.getClass();
-                Constructor<? extends Object> constructor = classObj.getConstructor(classObj);
-
-                // Tのコピーコンストラクタを使うから、キャストは正しい
-                @SuppressWarnings("unchecked")
-                T ret = (T) constructor.newInstance(obj);
-                dst.add(ret);
-            } catch (Exception ex) {
-                Util.logException(ex);
-                return false;
-            }
+        try {
+            Copier.copyAll(null, src, dst);
+        } catch (Exception ex) {
+            Util.logException(ex);
+            return false;
         }
 
         return true;
@@ -563,24 +558,14 @@ public final class Util {
     * @return true=複製が成功 false=失敗
     * @throws IllgalArgumentException 引数がnull、引数のクラスが異なる、
     */
-    @SuppressWarnings("unchecked")
     public static <T> boolean deepCopyByMethod(String copy, T[] src, T[] dst) {
         try {
             if (null == src || null == dst || false == src.getClass().equals(dst.getClass())) {
                 throw new IllegalArgumentException("引数がnull、または、クラスが異なる");
             }
-            if (0 == src.length) {
-                return true;
-            }
 
             for (int i = 0; i < src.length; i++) {
-                T obj = src[i];
-                Method method = obj.getClass().getMethod(copy);
-                // メソッドの返り値の代入互換性チェック
-                if (false == (method.getReturnType().isInstance(obj))) {
-                    throw new IllegalArgumentException("複製元と複製先の要素のクラスが異なる");
-                }
-                dst[i] = (T) method.invoke(obj);
+                dst[i] = Copier.copyByMethod(copy, src[i]);
             }
         } catch (Exception ex) {
             Util.logException(ex);
@@ -626,26 +611,9 @@ public final class Util {
             if (null == src || null == dst || false == src.getClass().equals(dst.getClass())) {
                 throw new IllegalArgumentException("引数がnull、または、クラスが異なる");
             }
-            if (0 == src.size()) {
-                dst.clear();
-                return true;
-            }
 
             dst.clear();
-
-            for (T obj : src) {
-                Method method = obj.getClass().getMethod(copy);
-                if (null == method) {
-                    throw new IllegalArgumentException(String.format("複製に指定されたメソッド%sが見つからない", copy));
-                }
-                // メソッドの返り値の代入互換性チェック
-                if (false == (method.getReturnType().isInstance(obj))) {
-                    throw new IllegalArgumentException("複製元と複製先の要素のクラスが異なる");
-                }
-                @SuppressWarnings("unchecked")
-                T ret = (T) method.invoke(obj);
-                dst.add(ret);
-            }
+            Copier.copyAll(copy, src, dst);
         } catch (Exception ex) {
             Util.logException(ex);
             return false;
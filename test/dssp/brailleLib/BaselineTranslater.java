@@ -0,0 +1,172 @@
+package dssp.brailleLib;
+
+import java.util.List;
+
+/**
+ * 索引を使う前のBrailleTranslater.braileFromSumiji()の処理をそのまま残したもの<br>
+ * ・翻訳の結果が元の処理と変わらないことを確かめるために使う<br>
+ * ・辞書の検索は部分文字列ごとのBrailleDict.getBrailleInfo()で、最長一致は部分文字列を1文字ずつ短くして探す<br>
+ * ・点字が見つからない墨字のログ出力だけを省いている
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+final class BaselineTranslater {
+    private final BrailleDict dict;
+    private final BrailleTranslater.MODE mode;
+    private final List<BrailleInfo> gaijiQueue = Util.newArrayList();
+    private final List<BrailleInfo> suufuQueue = Util.newArrayList();
+    private List<BrailleInfo> codeList = null;
+
+    BaselineTranslater(BrailleDict dict, BrailleTranslater.MODE mode) {
+        this.dict = dict;
+        this.mode = mode;
+    }
+
+    int braileFromSumiji(String text, List<BrailleInfo> codeList, boolean ignoreLineBreak, boolean includeExtra) {
+        if (null == codeList) {
+            throw new IllegalArgumentException("codeListがnull");
+        }
+        if (0 == text.length()) {
+            return 0;
+        }
+
+        this.codeList = codeList;
+
+        this.codeList.clear();
+
+        int nBraille = 0;
+
+        // 辞書の最大文字数から始めて、部分文字列を最長一致検索
+        int start = 0;
+        while (true) {
+            BrailleInfo info = null;
+            int end = Math.min(start + this.dict.getMaxSumijiLen(), text.length());
+            String sumiji = null;
+            while (end > start) {
+                // 部分文字列
+                sumiji = text.substring(start, end);
+                if (null == sumiji) {
+                    break;
+                } else if (sumiji.equals("\n\r") || sumiji.equals("\r\n")) {
+                    info = BrailleInfo.LINEBREAK;
+                    break;
+                } else if (sumiji.equals("\n") || sumiji.equals("\r")) {
+                    info = BrailleInfo.LINEBREAK;
+                    break;
+                } else {
+                    info = this.dict.getBrailleInfo(sumiji);
+                    if (false == info.isEmpty()) {
+                        break;
+                    }
+                    if (info.isPostChar()) {
+                        break;
+                    }
+                    // 部分文字列を1文字ずつ短くする
+                    end--;
+                }
+            }
+            if (null == info || (false == info.isLineBreak() && false == info.isPostChar() && info.isEmpty())) {
+                if (null != sumiji) {
+                    if (sumiji.equals(" ") || sumiji.equals("　")) {
+                        info = BrailleInfo.SPACE;
+                    } else {
+                        info = BrailleInfo.UNKNOWN;
+                    }
+                }
+                start++;
+            } else {
+                start = end;
+            }
+            nBraille++;
+            if (null != info) {
+                if (includeExtra && info.haveExtra(BrailleInfo.EXTRA.GAIJIFU)) {
+                    this.checkSuufu();
+                    this.gaijiQueue.add(info);
+                } else if (includeExtra && info.haveExtra(BrailleInfo.EXTRA.SUUFU)) {
+                    this.checkGaijifu();
+                    this.suufuQueue.add(info);
+                } else {
+                    this.checkGaijifu();
+                    this.checkSuufu();
+                    if (info != BrailleInfo.LINEBREAK || false == ignoreLineBreak) {
+                        this.addBraille(info);
+                    }
+                }
+            }
+            if (end == text.length()) {
+                break;
+            }
+        }
+        this.checkGaijifu();
+        this.checkSuufu();
+
+        return nBraille;
+    }
+
+    private void checkGaijifu() {
+        int nExtra = Math.min(2, this.gaijiQueue.size());
+        if (0 < nExtra) {
+            BrailleInfo gaijiFlag = this.dict.getExtra(BrailleInfo.EXTRA.GAIJIFU);
+            switch (this.mode) {
+            case TEXT:
+                for (int j = 0; j < nExtra; j++) {
+                    this.codeList.add(gaijiFlag);
+                }
+                break;
+            case FORMULA:
+            }
+
+            // 大文字符の処理
+            BrailleInfo oomojiFlag = this.dict.getExtra(BrailleInfo.EXTRA.OOMOJIFU);
+            int oomojiIndex = 0;
+            int nOomoji = 0;
+            for (int i = (this.gaijiQueue.size() - 1); i >= 0; i--) {
+                BrailleInfo info = this.gaijiQueue.get(i);
+                if (info.haveExtra(BrailleInfo.EXTRA.OOMOJIFU)) {
+                    if (0 == nOomoji) {
+                        oomojiIndex = i;
+                    }
+                    nOomoji = Math.min(2, nOomoji + 1);
+                } else {
+                    if (2 == nOomoji && oomojiIndex < (this.gaijiQueue.size() - 1)) {
+                        this.gaijiQueue.add(oomojiIndex + 1, gaijiFlag);
+                    }
+                    oomojiIndex = 0;
+                    for (int j = 0; j < nOomoji; j++) {
+                        this.gaijiQueue.add(i + 1, oomojiFlag);
+                    }
+                    nOomoji = 0;
+                }
+            }
+            if (2 == nOomoji && oomojiIndex < (this.gaijiQueue.size() - 1)) {
+                this.gaijiQueue.add(oomojiIndex + 1, gaijiFlag);
+            }
+            for (int j = 0; j < nOomoji; j++) {
+                this.gaijiQueue.add(0, oomojiFlag);
+            }
+
+            this.addBraile(this.gaijiQueue);
+            this.gaijiQueue.clear();
+        }
+    }
+
+    private void checkSuufu() {
+        if (0 < this.suufuQueue.size()) {
+            BrailleInfo extra = this.dict.getExtra(BrailleInfo.EXTRA.SUUFU);
+            this.codeList.add(extra);
+            this.addBraile(this.suufuQueue);
+            this.suufuQueue.clear();
+        }
+    }
+
+    private void addBraile(List<BrailleInfo> list) {
+        for (BrailleInfo info : list) {
+            this.addBraille(info);
+        }
+    }
+
+    private void addBraille(BrailleInfo info) {
+        this.codeList.add(info);
+    }
+}
@@ -0,0 +1,93 @@
+package dssp.brailleLib;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * batchBraileFromSumiji()と、1件ずつbraileFromSumiji()を呼ぶ場合のスループットを比べる<br>
+ * ・短いテキスト(見出し、表のセル、キャプションなど)を多数翻訳する場合を想定する<br>
+ * ・JUnitのテストではないので、mvn testでは実行しない。テストのクラスパスでmain()を実行する<br>
+ * [引数]<br>
+ * 　テキストの数(省略時は10000) 繰り返す回数(省略時は20)
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public final class BatchTranslationBenchmark {
+    private static final int N_WARMUP = 5;
+
+    private BatchTranslationBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int nText = (0 < args.length ? Integer.parseInt(args[0]) : 10000);
+        int nRepeat = (1 < args.length ? Integer.parseInt(args[1]) : 20);
+
+        TestDicts.initLog();
+        BrailleDict dict = TestDicts.newDict();
+        String corpus = TestDicts.newCorpus(dict, 4L, 100000, false);
+        Random random = new Random(5L);
+        List<String> texts = Util.newArrayList();
+        for (int i = 0; i < nText; i++) {
+            int start = random.nextInt(corpus.length() - 40);
+            texts.add(corpus.substring(start, start + 1 + random.nextInt(40)));
+        }
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+
+        // 結果が同じことを確かめてから測る
+        BrailleTranslater.BatchResult batch = translater.batchBraileFromSumiji(texts, false, true, null);
+        List<BrailleInfo> codeList = Util.newArrayList();
+        for (int i = 0; i < texts.size(); i++) {
+            int nBraille = translater.braileFromSumiji(texts.get(i), 0, texts.get(i).length(), codeList, false, true,
+                    null);
+            if (nBraille != batch.getBrailleCount(i) || false == codeList.equals(batch.getBrailleList(i))) {
+                throw new IllegalStateException(String.format("%d番目のテキストの結果が異なる", i));
+            }
+        }
+
+        for (int i = 0; i < N_WARMUP; i++) {
+            loop(translater, texts, codeList);
+            loopRegion(translater, texts, codeList);
+            translater.batchBraileFromSumiji(texts, false, true, null);
+        }
+        long loopTime = 0;
+        long regionTime = 0;
+        long batchTime = 0;
+        for (int i = 0; i < nRepeat; i++) {
+            long t0 = System.nanoTime();
+            loop(translater, texts, codeList);
+            long t1 = System.nanoTime();
+            loopRegion(translater, texts, codeList);
+            long t2 = System.nanoTime();
+            translater.batchBraileFromSumiji(texts, false, true, null);
+            long t3 = System.nanoTime();
+            loopTime += t1 - t0;
+            regionTime += t2 - t1;
+            batchTime += t3 - t2;
+        }
+
+        System.out.println(String.format("テキスト%d件 x %d回", nText, nRepeat));
+        double n = (double) nText * nRepeat;
+        System.out.println(String.format("1件ずつ(String版):         %8.1f 件/ms", n / (loopTime / 1e6)));
+        System.out.println(String.format("1件ずつ(範囲版、ログなし): %8.1f 件/ms", n / (regionTime / 1e6)));
+        System.out.println(String.format("まとめて:                  %8.1f 件/ms", n / (batchTime / 1e6)));
+    }
+
+    /**
+    * 1件ずつ、範囲版のbraileFromSumiji()で翻訳する(点字が見つからない墨字はログに出力しない)
+    */
+    private static void loopRegion(BrailleTranslater translater, List<String> texts, List<BrailleInfo> codeList) {
+        for (String text : texts) {
+            translater.braileFromSumiji(text, 0, text.length(), codeList, false, true, null);
+        }
+    }
+
+    /**
+    * 1件ずつ、String版のbraileFromSumiji()で翻訳する(今までの呼び出し方)
+    */
+    private static void loop(BrailleTranslater translater, List<String> texts, List<BrailleInfo> codeList) {
+        for (String text : texts) {
+            translater.braileFromSumiji(text, codeList, false, true);
+        }
+    }
+}
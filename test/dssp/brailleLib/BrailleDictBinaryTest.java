@@ -0,0 +1,226 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * バイナリ形式の辞書を書き出して読み込んだ結果が、元の辞書と同じになることを確かめる<br>
+ * ・土台がなく空の辞書に読み込む場合(ファイルの索引を使う)と、上書き辞書に読み込む場合(索引を作り直す)の両方で翻訳結果を比べる<br>
+ * ・壊れたファイルやバージョンの違うファイルは読み込めず、辞書は変更されないこと
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleDictBinaryTest {
+    private static final int CORPUS_LENGTH = 3000;
+
+    private static File dir;
+    private static BrailleDict dict;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+        dir = new File("target", "binary-test");
+        dir.mkdirs();
+        dict = TestDicts.newDict();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        File file = new File(dir, "roundtrip.bin");
+        assertTrue(dict.saveBinary(file));
+
+        BrailleDict loaded = new BrailleDict();
+        assertTrue(loaded.loadBinary(file));
+        assertEntries(dict, loaded);
+        assertTranslation(dict, loaded);
+
+        // 上書き辞書に読み込んだ場合は、ファイルの索引を使わずに作り直す
+        BrailleDict overlay = new BrailleDict(new BrailleDict());
+        assertTrue(overlay.loadBinary(file));
+        assertEntries(dict, overlay);
+        assertTranslation(dict, overlay);
+    }
+
+    @Test
+    public void testOverwrite() throws IOException {
+        File file = new File(dir, "overwrite.bin");
+        Files.write(file.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+        assertTrue(dict.saveBinary(file));
+
+        // 一時ファイルは残らない
+        File[] files = dir.listFiles();
+        for (File f : files) {
+            assertFalse(f.getName(), f.getName().endsWith(".tmp"));
+        }
+        BrailleDict loaded = new BrailleDict();
+        assertTrue(loaded.loadBinary(file));
+        assertEntries(dict, loaded);
+    }
+
+    @Test
+    public void testBrokenFile() throws IOException {
+        File file = new File(dir, "broken.bin");
+        assertTrue(dict.saveBinary(file));
+        long length = file.length();
+
+        // バージョンを書き換える
+        File version = new File(dir, "version.bin");
+        Files.copy(file.toPath(), version.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (RandomAccessFile raf = new RandomAccessFile(version, "rw")) {
+            raf.seek(4);
+            raf.writeInt(1);
+        }
+        assertNotLoaded(version);
+
+        // 途中で切れたファイル
+        for (long size : new long[] { 0, 6, length / 3, length / 2, length - 1 }) {
+            File truncated = new File(dir, "truncated.bin");
+            Files.copy(file.toPath(), truncated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (RandomAccessFile raf = new RandomAccessFile(truncated, "rw")) {
+                raf.setLength(size);
+            }
+            assertNotLoaded(truncated);
+        }
+    }
+
+    @Test
+    public void testLoadWithCache() throws IOException {
+        File xml = new File(dir, "cache-src.xml");
+        File cache = new File(dir, "cache.bin");
+        Files.deleteIfExists(cache.toPath());
+
+        // 読めないXMLはfalseを返し、キャッシュも作らない
+        Files.write(xml.toPath(), "<broken".getBytes(StandardCharsets.UTF_8));
+        assertFalse(new BrailleDict().load(xml));
+        assertFalse(new BrailleDict().load(xml, cache));
+        assertFalse(cache.exists());
+
+        // XMLより新しいキャッシュは、XMLが読めなくてもキャッシュから読む
+        assertTrue(dict.saveBinary(cache));
+        assertTrue(cache.setLastModified(xml.lastModified() + 1000L));
+        BrailleDict loaded = new BrailleDict();
+        assertTrue(loaded.load(xml, cache));
+        assertEntries(dict, loaded);
+    }
+
+    private static void assertNotLoaded(File file) {
+        BrailleDict target = new BrailleDict();
+        assertFalse(file.getName(), target.loadBinary(file));
+        assertTrue(file.getName(), target.getEntries().isEmpty());
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            assertNull(file.getName(), target.getExtra(extra));
+        }
+    }
+
+    /**
+    * 登録した墨字と符号の内容を比べる(辞書が違うのでequals()は使わない)
+    */
+    private static void assertEntries(BrailleDict expected, BrailleDict actual) {
+        assertEquals(expected.getSumijiList(), actual.getSumijiList());
+        for (String sumiji : expected.getSumijiList()) {
+            assertInfo(sumiji, expected.getBrailleInfo(sumiji), actual.getBrailleInfo(sumiji));
+        }
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            assertInfo(extra.name(), expected.getExtra(extra), actual.getExtra(extra));
+        }
+        assertEquals(expected.getMaxSumijiLen(), actual.getMaxSumijiLen());
+        assertEquals(expected.getMaxBoxCount(), actual.getMaxBoxCount());
+        assertEquals(expected.getMaxNABCCLen(), actual.getMaxNABCCLen());
+    }
+
+    private static void assertInfo(String label, BrailleInfo expected, BrailleInfo actual) {
+        if (null == expected) {
+            assertNull(label, actual);
+            return;
+        }
+        assertEquals(label, expected.getSumiji(), actual.getSumiji());
+        assertEquals(label, expected.getType(), actual.getType());
+        assertEquals(label, expected.getDesc(), actual.getDesc());
+        assertEquals(label, expected.isPostChar(), actual.isPostChar());
+        assertEquals(label, expected.getNABCC(false), actual.getNABCC(false));
+        assertEquals(label, expected.getNABCC(true), actual.getNABCC(true));
+        assertEquals(label, expected.getPackedCells(), actual.getPackedCells());
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            assertEquals(label, expected.haveExtra(extra), actual.haveExtra(extra));
+        }
+    }
+
+    /**
+    * 墨字から点字、NABCCとマスの列からの検索、点字から墨字の結果を比べる
+    */
+    private static void assertTranslation(BrailleDict expected, BrailleDict actual) {
+        String text = TestDicts.newCorpus(expected, 7L, CORPUS_LENGTH, false);
+        BrailleTranslater expectedTranslater = BrailleTranslater.newInstance(expected);
+        BrailleTranslater actualTranslater = BrailleTranslater.newInstance(actual);
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            expectedTranslater.setMode(mode);
+            actualTranslater.setMode(mode);
+            for (int flags = 0; flags < 4; flags++) {
+                boolean ignoreLineBreak = (0 != (flags & 1));
+                boolean includeExtra = (0 != (flags & 2));
+                List<BrailleInfo> expectedList = Util.newArrayList();
+                List<BrailleInfo> actualList = Util.newArrayList();
+                String label = String.format("%s flags=%d", mode, flags);
+                assertEquals(label, expectedTranslater.braileFromSumiji(text, expectedList, ignoreLineBreak,
+                        includeExtra), actualTranslater.braileFromSumiji(text, actualList, ignoreLineBreak,
+                                includeExtra));
+                assertEquals(label, toKeys(expectedList), toKeys(actualList));
+            }
+        }
+
+        for (BrailleInfo info : expected.getEntries()) {
+            String nabcc = info.getNABCC(true);
+            assertEquals(nabcc, key(expected.getBraille(nabcc)), key(actual.getBraille(nabcc)));
+            List<BrailleBox> boxList = toBoxList(info);
+            assertEquals(nabcc, key(expected.getBraille(boxList)), key(actual.getBraille(boxList)));
+            assertEquals(nabcc, toKeys(expectedTranslater.sumijiFromBraille(boxList)),
+                    toKeys(actualTranslater.sumijiFromBraille(boxList)));
+        }
+    }
+
+    private static List<String> toKeys(List<BrailleInfo> infoList) {
+        List<String> keys = Util.newArrayList();
+        for (BrailleInfo info : infoList) {
+            keys.add(key(info));
+        }
+
+        return keys;
+    }
+
+    private static String key(BrailleInfo info) {
+        if (null == info) {
+            return null;
+        }
+
+        return String.format("%s/%s/%s", info.getSumiji(), info.getNABCC(true), info.getPackedCells());
+    }
+
+    /**
+    * 符号を含めたマスの列を点字マスのリストにする
+    */
+    private static List<BrailleBox> toBoxList(BrailleInfo info) {
+        List<BrailleBox> boxList = Util.newArrayList();
+        String cells = info.getPackedCells();
+        if (null != cells) {
+            for (int i = 0; i < cells.length(); i++) {
+                boxList.add(new BrailleBox(0, 0, 0, 0, 0, BrailleInfo.unpackDots(cells.charAt(i))));
+            }
+        }
+
+        return boxList;
+    }
+}
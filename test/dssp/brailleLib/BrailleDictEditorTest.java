@@ -0,0 +1,168 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.TreeSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * BrailleDict.Editorでまとめて変更した結果と、長さの最大値を確かめる<br>
+ * ・反映できない変更を含む場合は、何も反映されないこと<br>
+ * ・土台の辞書を変更した場合に、上書き辞書の最大値とスナップショットが追従すること
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleDictEditorTest {
+    private static final String LONGEST = "ながいながいすみじ";
+    private static final String LONGEST_NABCC = "longest-nabcc";
+    private static final int LONGEST_BOX_COUNT = 4;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+    }
+
+    @Test
+    public void testCommit() {
+        BrailleDict dict = TestDicts.newDict();
+        int maxSumijiLen = dict.getMaxSumijiLen();
+        int maxBoxCount = dict.getMaxBoxCount();
+        int maxNABCCLen = dict.getMaxNABCCLen();
+
+        BrailleInfo longest = newInfo(dict, LONGEST, LONGEST_NABCC, LONGEST_BOX_COUNT);
+        BrailleInfo added = newInfo(dict, "ついか", "add", 1);
+        BrailleInfo oldA = dict.getBrailleInfo("あ");
+        BrailleInfo newA = oldA.toMutable();
+        newA.setNABCC("a2");
+        assertEquals(4, dict.edit().add(longest).add(added).replace(oldA, newA).delete("い").commit());
+
+        assertSame(longest, dict.getBrailleInfo(LONGEST));
+        assertSame(added, dict.getBrailleInfo("ついか"));
+        assertSame(newA, dict.getBrailleInfo("あ"));
+        assertSame(BrailleInfo.SPACE, dict.getBrailleInfo("い"));
+        assertSame(newA, dict.getBraille("a2"));
+        assertSame(longest, dict.getBraille(LONGEST_NABCC));
+        assertMax(dict, LONGEST.length(), LONGEST_BOX_COUNT, LONGEST_NABCC.length());
+
+        // 最長の墨字を削除すると、最大値が元に戻る
+        assertEquals(1, dict.edit().delete(LONGEST).commit());
+        assertSame(BrailleInfo.SPACE, dict.getBrailleInfo(LONGEST));
+        assertNull(dict.getBraille(LONGEST_NABCC));
+        assertMax(dict, maxSumijiLen, maxBoxCount, maxNABCCLen);
+
+        assertEquals(0, dict.edit().commit());
+    }
+
+    @Test
+    public void testCommitIsAllOrNothing() {
+        BrailleDict dict = TestDicts.newDict();
+        TreeSet<String> sumijiList = dict.getSumijiList();
+        int maxSumijiLen = dict.getMaxSumijiLen();
+        CompiledBrailleDict compiled = dict.compile();
+
+        BrailleInfo noSumiji = newInfo(dict, "すみじなし", "none", 1);
+        noSumiji.setSumiji(null);
+        BrailleDict.Editor[] editors = {
+                dict.edit().add(newInfo(dict, LONGEST, LONGEST_NABCC, 1)).delete("あ").add(null),
+                dict.edit().delete("あ").add(noSumiji),
+                dict.edit().delete("あ").replace(dict.getBrailleInfo("い"), null),
+                dict.edit().delExtra(BrailleInfo.EXTRA.GAIJIFU).setExtra(BrailleInfo.EXTRA.SUUFU, null),
+                dict.edit().delete("あ").delExtra(null) };
+        for (BrailleDict.Editor editor : editors) {
+            try {
+                editor.commit();
+                fail();
+            } catch (IllegalArgumentException ex) {
+            }
+            assertEquals(sumijiList, dict.getSumijiList());
+            assertEquals(maxSumijiLen, dict.getMaxSumijiLen());
+            assertNotNull(dict.getExtra(BrailleInfo.EXTRA.GAIJIFU));
+            assertSame(compiled, dict.compile());
+
+            // 溜めた変更は残るので、捨ててから続けて使える
+            editor.cancel();
+            assertEquals(0, editor.commit());
+        }
+    }
+
+    @Test
+    public void testOverlayFollowsBase() {
+        BrailleDict base = TestDicts.newDict();
+        BrailleDict overlay = new BrailleDict(base);
+        int maxSumijiLen = base.getMaxSumijiLen();
+        int maxBoxCount = base.getMaxBoxCount();
+        int maxNABCCLen = base.getMaxNABCCLen();
+        assertMax(overlay, maxSumijiLen, maxBoxCount, maxNABCCLen);
+
+        // 土台の辞書に追加した最長の墨字は、上書き辞書の最大値、スナップショット、検索にも反映する
+        CompiledBrailleDict before = overlay.compile();
+        BrailleInfo longest = newInfo(base, LONGEST, LONGEST_NABCC, LONGEST_BOX_COUNT);
+        assertEquals(1, base.edit().add(longest).commit());
+        assertNotSame(before, overlay.compile());
+        assertSame(longest, overlay.compile().getBrailleInfo(LONGEST));
+        assertSame(longest, overlay.getBraille(LONGEST_NABCC));
+        assertMax(overlay, LONGEST.length(), LONGEST_BOX_COUNT, LONGEST_NABCC.length());
+
+        // 土台の辞書から削除すると、上書き辞書に登録した墨字の最大値になる
+        BrailleInfo own = newInfo(overlay, "うわがき", "own", 3);
+        assertEquals(1, overlay.edit().add(own).commit());
+        assertEquals(1, base.edit().delete(LONGEST).commit());
+        assertNull(overlay.getBraille(LONGEST_NABCC));
+        assertMax(overlay, "うわがき".length(), 3, maxNABCCLen);
+
+        // 土台の辞書の符号を変えると、上書き辞書のBrailleInfoのNABCCの長さも数え直す
+        String body = "gaiji-body";
+        BrailleInfo gaiji = newInfo(overlay, "がいじ", body, 1, BrailleInfo.EXTRA.GAIJIFU);
+        assertEquals(1, overlay.edit().add(gaiji).commit());
+        int extraLen = base.getExtra(BrailleInfo.EXTRA.GAIJIFU).getNABCC(false).length();
+        assertMax(overlay, "うわがき".length(), 3, extraLen + body.length());
+
+        BrailleInfo gaijifu = base.newBrailleInfo();
+        gaijifu.setType(BrailleInfo.TYPE.ADDITIONAL);
+        gaijifu.setNABCC(";;;;;");
+        gaijifu.addBox(new int[] { 5, 6 });
+        assertEquals(1, base.edit().setExtra(BrailleInfo.EXTRA.GAIJIFU, gaijifu).commit());
+        assertMax(overlay, "うわがき".length(), 3, ";;;;;".length() + body.length());
+        assertSame(gaiji, overlay.getBraille(";;;;;" + body));
+    }
+
+    /**
+    * 辞書とスナップショットの長さの最大値を確かめる
+    */
+    private static void assertMax(BrailleDict dict, int maxSumijiLen, int maxBoxCount, int maxNABCCLen) {
+        assertEquals(maxSumijiLen, dict.getMaxSumijiLen());
+        assertEquals(maxBoxCount, dict.getMaxBoxCount());
+        assertEquals(maxNABCCLen, dict.getMaxNABCCLen());
+        CompiledBrailleDict compiled = dict.compile();
+        assertEquals(maxSumijiLen, compiled.getMaxSumijiLen());
+        assertEquals(maxBoxCount, compiled.getMaxBoxCount());
+        assertEquals(maxNABCCLen, compiled.getMaxNABCCLen());
+    }
+
+    /**
+    * 点の7と8のマスを指定した数だけ持つBrailleInfoを生成する(テスト用の辞書のマスとは重ならない)
+    */
+    private static BrailleInfo newInfo(BrailleDict dict, String sumiji, String nabcc, int boxCount,
+            BrailleInfo.EXTRA... extras) {
+        BrailleInfo info = dict.newBrailleInfo();
+        info.setSumiji(sumiji);
+        info.setType(BrailleInfo.TYPE.VISIBLE);
+        for (BrailleInfo.EXTRA extra : extras) {
+            info.setExtra(extra, true);
+        }
+        info.setNABCC(nabcc);
+        for (int i = 0; i < boxCount; i++) {
+            info.addBox(new int[] { 7, 8 });
+        }
+
+        return info;
+    }
+}
@@ -0,0 +1,113 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * BrailleDict.getBraille()の、登録と削除のたびに更新する索引の結果が、
+ * 作り直したスナップショットの結果と同じになることを確かめる<br>
+ * ・土台の辞書と上書き辞書の両方に、マスの列とNABCCが同じで墨字が違うBrailleInfoを登録、削除し、符号も変更する
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleDictIndexTest {
+    private static final int EDIT_COUNT = 400;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+    }
+
+    @Test
+    public void testEdits() {
+        BrailleDict base = TestDicts.newDict();
+        BrailleDict overlay = new BrailleDict(base);
+        List<BrailleInfo> sources = Util.newArrayList(base.getEntries());
+        Random random = new Random(5L);
+
+        for (int i = 0; i < EDIT_COUNT; i++) {
+            BrailleDict target = (random.nextBoolean() ? base : overlay);
+            switch (random.nextInt(6)) {
+            case 0:
+            case 1:
+                // 既存のBrailleInfoとキーが同じで、墨字が違うBrailleInfo
+                target.replaceBrailleInfo(null,
+                        newEntry(target, "x" + random.nextInt(50), sources.get(random.nextInt(sources.size()))));
+                break;
+            case 2:
+                // 土台の辞書と同じ墨字で、キーが違うBrailleInfo
+                BrailleInfo shadowed = sources.get(random.nextInt(sources.size()));
+                overlay.replaceBrailleInfo(null, newEntry(overlay, shadowed.getSumiji(),
+                        sources.get(random.nextInt(sources.size()))));
+                break;
+            case 3:
+                List<BrailleInfo> entries = Util.newArrayList(target.getEntries());
+                if (false == entries.isEmpty()) {
+                    target.delBrailleInfo(entries.get(random.nextInt(entries.size())).getSumiji());
+                }
+                break;
+            case 4:
+                BrailleInfo suufu = overlay.newBrailleInfo();
+                suufu.setType(BrailleInfo.TYPE.ADDITIONAL);
+                suufu.setNABCC("=");
+                suufu.addBox(new int[] { 1, 2, 3 });
+                overlay.setExtra(BrailleInfo.EXTRA.SUUFU, suufu);
+                break;
+            default:
+                overlay.delExtra(BrailleInfo.EXTRA.SUUFU);
+                break;
+            }
+
+            String label = String.format("edit=%d", i);
+            for (BrailleDict dict : new BrailleDict[] { base, overlay }) {
+                CompiledBrailleDict compiled = dict.compile();
+                for (BrailleInfo info : sources) {
+                    String nabcc = info.getNABCC(true);
+                    assertSame(label, compiled.getBraille(nabcc), dict.getBraille(nabcc));
+                    List<BrailleBox> boxList = toBoxList(info);
+                    assertSame(label, compiled.getBraille(boxList), dict.getBraille(boxList));
+                }
+                assertEquals(label, null, dict.getBraille("no such nabcc"));
+            }
+        }
+    }
+
+    private static BrailleInfo newEntry(BrailleDict dict, String sumiji, BrailleInfo src) {
+        BrailleInfo info = dict.newBrailleInfo();
+        info.setSumiji(sumiji);
+        info.setType(BrailleInfo.TYPE.VISIBLE);
+        for (BrailleInfo.EXTRA extra : BrailleInfo.EXTRA.values()) {
+            if (src.haveExtra(extra)) {
+                info.setExtra(extra, true);
+            }
+        }
+        for (int i = 0; i < src.getBoxCount(); i++) {
+            info.addBox(src.getBox(i));
+        }
+        info.setNABCC(src.getNABCC(false));
+
+        return info;
+    }
+
+    /**
+    * 符号を含めたマスの列を点字マスのリストにする
+    */
+    private static List<BrailleBox> toBoxList(BrailleInfo info) {
+        List<BrailleBox> boxList = Util.newArrayList();
+        String cells = info.getPackedCells();
+        if (null != cells) {
+            for (int i = 0; i < cells.length(); i++) {
+                boxList.add(new BrailleBox(0, 0, 0, 0, 0, BrailleInfo.unpackDots(cells.charAt(i))));
+            }
+        }
+
+        return boxList;
+    }
+}
@@ -0,0 +1,135 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * sumijiFromCells()で、符号を含めた点字から元の墨字に戻ることを確かめる<br>
+ * ・外字符、大文字符、数符が続く範囲の中の、符号を省いたマスの列を含むテキストで、
+ * 符号を含めて翻訳したマスの列を墨字に戻し、符号を含めずに翻訳した結果と比べる
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleTranslaterCellsTest {
+    private static final int CORPUS_LENGTH = 50000;
+
+    private static BrailleDict dict;
+    private static String corpus;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+        dict = TestDicts.newDict();
+        corpus = TestDicts.newCorpus(dict, 2L, CORPUS_LENGTH, true);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            translater.setMode(mode);
+            List<BrailleInfo> expected = Util.newArrayList();
+            translater.braileFromSumiji(corpus, 0, corpus.length(), expected, false, false, null);
+            List<BrailleInfo> braille = Util.newArrayList();
+            translater.braileFromSumiji(corpus, 0, corpus.length(), braille, false, true, null);
+
+            assertEquals(mode.toString(), expected, translater.sumijiFromCells(toCells(braille)));
+        }
+    }
+
+    @Test
+    public void testRuns() {
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+        String[] texts = { "a", "ab", "A", "AB", "Ab", "ABc", "aBCd", "AB1", "1a", "a1b", "12か", "abか", "ABか",
+                "a　b", "A\nb" };
+        for (String text : texts) {
+            List<BrailleInfo> expected = Util.newArrayList();
+            translater.braileFromSumiji(text, 0, text.length(), expected, false, false, null);
+            List<BrailleInfo> braille = Util.newArrayList();
+            translater.braileFromSumiji(text, 0, text.length(), braille, false, true, null);
+
+            assertEquals(text, expected, translater.sumijiFromCells(toCells(braille)));
+        }
+    }
+
+    @Test
+    public void testInvalidDots() {
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+        List<BrailleInfo> expected = Util.newArrayList();
+        translater.braileFromSumiji("あ", 0, 1, expected, false, false, null);
+        expected.add(0, BrailleInfo.UNKNOWN);
+        expected.add(BrailleInfo.UNKNOWN);
+
+        List<int[]> cells = Util.newArrayList();
+        cells.add(new int[] { 0, 1 });
+        cells.addAll(toCells(expected.subList(1, 2)));
+        cells.add(new int[] { BrailleInfo.MAX_DOT_NUMBER + 1 });
+
+        assertEquals(expected, translater.sumijiFromCells(cells));
+    }
+
+    @Test
+    public void testLookupInvalidDots() {
+        CompiledBrailleDict compiled = dict.compile();
+        List<BrailleInfo> braille = Util.newArrayList();
+        BrailleTranslater.newInstance(dict).braileFromSumiji("あ", 0, 1, braille, false, false, null);
+        List<BrailleBox> boxList = Util.newArrayList();
+        for (int[] dots : toCells(braille)) {
+            boxList.add(new BrailleBox(0, 0, 0, 0, 0, dots));
+        }
+        assertEquals(braille.get(0), compiled.getBraille(boxList));
+
+        // 範囲外の点を含むマスは例外にせず、見つからない
+        boxList.add(new BrailleBox(0, 0, 0, 0, 0, new int[] { 0 }));
+        assertNull(compiled.getBraille(boxList));
+        boxList.set(boxList.size() - 1, new BrailleBox(0, 0, 0, 0, 0, new int[] { BrailleInfo.MAX_DOT_NUMBER + 1 }));
+        assertNull(compiled.getBraille(boxList));
+    }
+
+    @Test
+    public void testSumijiFromBrailleInvalidDots() {
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+        List<BrailleInfo> expected = Util.newArrayList();
+        translater.braileFromSumiji("あ", 0, 1, expected, false, false, null);
+        List<BrailleBox> boxList = Util.newArrayList();
+        for (int[] dots : toCells(expected)) {
+            boxList.add(new BrailleBox(0, 0, 0, 0, 0, dots));
+        }
+        boxList.add(new BrailleBox(0, 0, 0, 0, 1, new int[] { BrailleInfo.MAX_DOT_NUMBER + 1 }));
+        boxList.add(BrailleBox.getLineBreak(0, 0, 0, 0, 2));
+        boxList.add(new BrailleBox(0, 0, 0, 0, 3, new int[] { 0 }));
+        expected.add(BrailleInfo.UNKNOWN);
+        expected.add(BrailleInfo.LINEBREAK);
+        expected.add(BrailleInfo.UNKNOWN);
+
+        // 範囲外の点を含むマスは例外にせず、UNKNOWNにする
+        assertEquals(expected, translater.sumijiFromBraille(boxList));
+    }
+
+    /**
+    * 点字のリストをマスの点のリストの列にする(空白は点のないマス、改行はnull)
+    */
+    private static List<int[]> toCells(List<BrailleInfo> braille) {
+        List<int[]> cells = Util.newArrayList();
+        for (BrailleInfo info : braille) {
+            if (BrailleInfo.LINEBREAK == info) {
+                cells.add(null);
+            } else if (BrailleInfo.SPACE == info) {
+                cells.add(new int[0]);
+            } else {
+                for (int i = 0; i < info.getBoxCount(); i++) {
+                    cells.add(Arrays.copyOf(info.getBox(i), info.getBox(i).length));
+                }
+            }
+        }
+
+        return cells;
+    }
+}
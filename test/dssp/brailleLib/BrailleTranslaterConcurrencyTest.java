@@ -0,0 +1,123 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 1つのBrailleTranslaterを多数のスレッドで同時に使っても、翻訳の結果が変わらないことを確かめる<br>
+ * ・MODEとENGINEの組み合わせごとに1つのBrailleTranslaterを作り、全てのスレッドで共有する<br>
+ * ・各スレッドの結果を、1つのスレッドで先に翻訳した結果と比べる
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleTranslaterConcurrencyTest {
+    private static final int N_THREAD = 16;
+    private static final int N_ROUND = 400;
+    private static final int N_SLICE = 64;
+
+    private static BrailleDict dict;
+    private static String corpus;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+        dict = TestDicts.newDict();
+        corpus = TestDicts.newCorpus(dict, 2L, 100000, false);
+    }
+
+    /**
+    * 1つのスレッドで翻訳した結果
+    */
+    private static final class Expected {
+        final int start;
+        final int end;
+        final boolean ignoreLineBreak;
+        final boolean includeExtra;
+        final int nBraille;
+        final List<BrailleInfo> codeList = Util.newArrayList();
+
+        Expected(BrailleTranslater translater, int start, int end, boolean ignoreLineBreak, boolean includeExtra) {
+            this.start = start;
+            this.end = end;
+            this.ignoreLineBreak = ignoreLineBreak;
+            this.includeExtra = includeExtra;
+            this.nBraille = translater.braileFromSumiji(corpus, start, end, this.codeList, ignoreLineBreak,
+                    includeExtra, null);
+        }
+    }
+
+    @Test
+    public void testSharedTranslaterUnderLoad() throws Exception {
+        // MODEとENGINEの組み合わせごとに、共有するBrailleTranslaterと期待する結果を作る
+        final List<BrailleTranslater> translaters = Util.newArrayList();
+        final List<List<Expected>> expecteds = Util.newArrayList();
+        Random random = new Random(3L);
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            for (BrailleTranslater.ENGINE engine : BrailleTranslater.ENGINE.values()) {
+                BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+                translater.setMode(mode);
+                translater.setEngine(engine);
+                List<Expected> list = Util.newArrayList();
+                for (int i = 0; i < N_SLICE; i++) {
+                    int start = random.nextInt(corpus.length());
+                    int end = Math.min(corpus.length(), start + 1 + random.nextInt(4000));
+                    list.add(new Expected(translater, start, end, random.nextBoolean(), random.nextBoolean()));
+                }
+                translaters.add(translater);
+                expecteds.add(list);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(N_THREAD);
+        try {
+            final CountDownLatch ready = new CountDownLatch(N_THREAD);
+            List<Future<Integer>> futures = Util.newArrayList();
+            for (int t = 0; t < N_THREAD; t++) {
+                final long seed = t;
+                futures.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        ready.countDown();
+                        ready.await();
+
+                        Random random = new Random(seed);
+                        List<BrailleInfo> codeList = Util.newArrayList();
+                        for (int round = 0; round < N_ROUND; round++) {
+                            int index = random.nextInt(translaters.size());
+                            BrailleTranslater translater = translaters.get(index);
+                            List<Expected> list = expecteds.get(index);
+                            Expected expected = list.get(random.nextInt(list.size()));
+                            int nBraille = translater.braileFromSumiji(corpus, expected.start, expected.end, codeList,
+                                    expected.ignoreLineBreak, expected.includeExtra, null);
+                            String label = String.format("translater=%d range=%d-%d", index, expected.start,
+                                    expected.end);
+                            assertEquals(label, expected.nBraille, nBraille);
+                            assertEquals(label, expected.codeList, codeList);
+                        }
+                        return N_ROUND;
+                    }
+                }));
+            }
+            int nTotal = 0;
+            for (Future<Integer> future : futures) {
+                // スレッドの中のAssertionErrorはExecutionExceptionで投げ直される
+                nTotal += future.get(5, TimeUnit.MINUTES);
+            }
+            assertEquals(N_THREAD * N_ROUND, nTotal);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
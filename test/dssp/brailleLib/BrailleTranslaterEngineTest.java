@@ -0,0 +1,112 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * ENGINEの違いで翻訳の結果が変わらないことを確かめる<br>
+ * ・改行(CR、LF、CRLF、LFCR)、全角と半角の空白、後置文字、マスのない墨字、未登録の文字を含む大きなテキストで、
+ * TRIE、LOOKUP、String版のbraileFromSumiji()の結果を比べる<br>
+ * ・索引を使う前の処理を残したBaselineTranslaterの結果とも比べる
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleTranslaterEngineTest {
+    private static final int CORPUS_LENGTH = 200000;
+
+    private static BrailleDict dict;
+    private static String corpus;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+        dict = TestDicts.newDict();
+        corpus = TestDicts.newCorpus(dict, 1L, CORPUS_LENGTH, false);
+    }
+
+    @Test
+    public void testEnginesAgree() {
+        BrailleTranslater trie = BrailleTranslater.newInstance(dict);
+        trie.setEngine(BrailleTranslater.ENGINE.TRIE);
+        BrailleTranslater lookup = BrailleTranslater.newInstance(dict);
+        lookup.setEngine(BrailleTranslater.ENGINE.LOOKUP);
+
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            trie.setMode(mode);
+            lookup.setMode(mode);
+            for (int flags = 0; flags < 4; flags++) {
+                boolean ignoreLineBreak = (0 != (flags & 1));
+                boolean includeExtra = (0 != (flags & 2));
+                String label = String.format("%s ignoreLineBreak=%b includeExtra=%b", mode, ignoreLineBreak,
+                        includeExtra);
+
+                List<BrailleInfo> expected = Util.newArrayList();
+                int nExpected = lookup.braileFromSumiji(corpus, 0, corpus.length(), expected, ignoreLineBreak,
+                        includeExtra, null);
+                List<BrailleInfo> actual = Util.newArrayList();
+                int nActual = trie.braileFromSumiji(corpus, 0, corpus.length(), actual, ignoreLineBreak,
+                        includeExtra, null);
+                assertEquals(label, nExpected, nActual);
+                assertEquals(label, expected, actual);
+
+                List<BrailleInfo> byString = Util.newArrayList();
+                int nByString = trie.braileFromSumiji(corpus, byString, ignoreLineBreak, includeExtra);
+                assertEquals(label, nExpected, nByString);
+                assertEquals(label, expected, byString);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesBaseline() {
+        BrailleTranslater trie = BrailleTranslater.newInstance(dict);
+        BrailleTranslater lookup = BrailleTranslater.newInstance(dict);
+        lookup.setEngine(BrailleTranslater.ENGINE.LOOKUP);
+
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            trie.setMode(mode);
+            lookup.setMode(mode);
+            BaselineTranslater baseline = new BaselineTranslater(dict, mode);
+            for (int flags = 0; flags < 4; flags++) {
+                boolean ignoreLineBreak = (0 != (flags & 1));
+                boolean includeExtra = (0 != (flags & 2));
+                String label = String.format("%s ignoreLineBreak=%b includeExtra=%b", mode, ignoreLineBreak,
+                        includeExtra);
+
+                List<BrailleInfo> expected = Util.newArrayList();
+                int nExpected = baseline.braileFromSumiji(corpus, expected, ignoreLineBreak, includeExtra);
+                for (BrailleTranslater translater : new BrailleTranslater[] { trie, lookup }) {
+                    List<BrailleInfo> actual = Util.newArrayList();
+                    int nActual = translater.braileFromSumiji(corpus, 0, corpus.length(), actual, ignoreLineBreak,
+                            includeExtra, null);
+                    assertEquals(label, nExpected, nActual);
+                    assertEquals(label, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEnginesAgreeOnSlices() {
+        BrailleTranslater trie = BrailleTranslater.newInstance(dict);
+        BrailleTranslater lookup = BrailleTranslater.newInstance(dict);
+        lookup.setEngine(BrailleTranslater.ENGINE.LOOKUP);
+
+        // 範囲の端で最長一致が切れる場合
+        List<BrailleInfo> expected = Util.newArrayList();
+        List<BrailleInfo> actual = Util.newArrayList();
+        for (int start = 0; start < 20000; start += 7) {
+            int end = Math.min(corpus.length(), start + 1 + (start % 23));
+            int nExpected = lookup.braileFromSumiji(corpus, start, end, expected, false, true, null);
+            int nActual = trie.braileFromSumiji(corpus, start, end, actual, false, true, null);
+            String label = String.format("%d-%d", start, end);
+            assertEquals(label, nExpected, nActual);
+            assertEquals(label, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * parallelBraileFromSumiji()の結果が、テキスト全体を1回で翻訳した結果と同じになることを確かめる<br>
+ * ・段落に分ける長さ(8192文字)より十分長いテキストで、改行(CR、LF、CRLF、LFCR)が混ざるものと、
+ * 段落に分けられない"\r"だけのものを使う
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleTranslaterParallelTest {
+    private static final int CORPUS_LENGTH = 60000;
+
+    private static BrailleDict dict;
+    private static String[] texts;
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+        dict = TestDicts.newDict();
+        String corpus = TestDicts.newCorpus(dict, 6L, CORPUS_LENGTH, false);
+        texts = new String[] { corpus, corpus.replace("\r\n", "\r").replace("\n", "\r"),
+                "\n\r" + corpus + "\r\n\n\r" };
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMatchesSequential() {
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            translater.setMode(mode);
+            for (int flags = 0; flags < 4; flags++) {
+                boolean ignoreLineBreak = (0 != (flags & 1));
+                boolean includeExtra = (0 != (flags & 2));
+                for (int i = 0; i < texts.length; i++) {
+                    String text = texts[i];
+                    String label = String.format("%s ignoreLineBreak=%b includeExtra=%b text=%d", mode,
+                            ignoreLineBreak, includeExtra, i);
+
+                    List<BrailleInfo> expected = Util.newArrayList();
+                    int nExpected = translater.braileFromSumiji(text, 0, text.length(), expected, ignoreLineBreak,
+                            includeExtra, null);
+                    for (ForkJoinPool p : new ForkJoinPool[] { null, pool }) {
+                        List<BrailleInfo> actual = Util.newArrayList();
+                        int nActual = translater.parallelBraileFromSumiji(text, actual, ignoreLineBreak,
+                                includeExtra, null, p);
+                        assertEquals(label, nExpected, nActual);
+                        assertEquals(label, expected, actual);
+                    }
+                }
+            }
+        }
+    }
+}
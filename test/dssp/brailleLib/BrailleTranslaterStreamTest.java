@@ -0,0 +1,115 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * ReaderとReadableByteChannelから読みながら翻訳した結果が、String版のbraileFromSumiji()と同じになることを確かめる<br>
+ * ・1文字、2文字、辞書の墨字の最大文字数ずつ読み、最長一致の先読みが読み込みの境界をまたぐようにする<br>
+ * ・読み込みの最後が"\r"になる改行、サロゲートペアの墨字(辞書にあるものとないもの)を含める
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class BrailleTranslaterStreamTest {
+    private static final int CORPUS_LENGTH = 4000;
+    /**
+    * サロゲートペアを含む墨字(辞書に登録する)と、辞書にないサロゲートペア
+    */
+    private static final String[] SURROGATE_WORDS = { "𠮷", "𠮷野家" };
+    private static final String UNKNOWN_SURROGATE = "😀";
+    private static final String[] PIECES = { "\r", "\n", "\r\n", "\n\r", "\r\r\n", "かきく", "こうえ", "AB1",
+            SURROGATE_WORDS[0], SURROGATE_WORDS[1], SURROGATE_WORDS[0] + "野", UNKNOWN_SURROGATE };
+
+    private static BrailleDict dict;
+    private static String[] texts;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+        dict = TestDicts.newDict();
+        for (int i = 0; i < SURROGATE_WORDS.length; i++) {
+            BrailleInfo info = dict.newBrailleInfo();
+            info.setSumiji(SURROGATE_WORDS[i]);
+            info.setType(BrailleInfo.TYPE.VISIBLE);
+            info.setNABCC(SURROGATE_WORDS[i]);
+            for (int j = 0; j <= i; j++) {
+                info.addBox(new int[] { 7, 8 });
+            }
+            dict.replaceBrailleInfo(null, info);
+        }
+
+        // 辞書の単語の間に、改行とサロゲートペアを混ぜる
+        String corpus = TestDicts.newCorpus(dict, 4L, CORPUS_LENGTH, false);
+        Random random = new Random(4L);
+        StringBuilder mixed = new StringBuilder();
+        for (int i = 0; i < corpus.length(); i++) {
+            mixed.append(corpus.charAt(i));
+            if (0 == random.nextInt(8)) {
+                mixed.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+        }
+        texts = new String[] { "", "\r", "\n\r", "a\r", "かきく", SURROGATE_WORDS[1], UNKNOWN_SURROGATE + "\r",
+                mixed.toString() };
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        this.check(false);
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        this.check(true);
+    }
+
+    private void check(boolean channel) throws IOException {
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+        int[] chunkSizes = { 1, 2, dict.getMaxSumijiLen(), 4096 };
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            translater.setMode(mode);
+            for (int flags = 0; flags < 4; flags++) {
+                boolean ignoreLineBreak = (0 != (flags & 1));
+                boolean includeExtra = (0 != (flags & 2));
+                for (String text : texts) {
+                    List<BrailleInfo> expected = Util.newArrayList();
+                    int nExpected = translater.braileFromSumiji(text, expected, ignoreLineBreak, includeExtra);
+
+                    for (int chunkSize : chunkSizes) {
+                        String label = String.format("%s flags=%d chunkSize=%d length=%d", mode, flags, chunkSize,
+                                text.length());
+                        final List<BrailleInfo> actual = Util.newArrayList();
+                        Consumer<BrailleInfo> sink = new Consumer<BrailleInfo>() {
+                            @Override
+                            public void accept(BrailleInfo info) {
+                                actual.add(info);
+                            }
+                        };
+                        int nActual;
+                        if (channel) {
+                            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                            nActual = translater.braileFromSumiji(Channels.newChannel(new ByteArrayInputStream(bytes)),
+                                    StandardCharsets.UTF_8, chunkSize, sink, ignoreLineBreak, includeExtra, null);
+                        } else {
+                            nActual = translater.braileFromSumiji(new StringReader(text), chunkSize, sink,
+                                    ignoreLineBreak, includeExtra, null);
+                        }
+                        assertEquals(label, nExpected, nActual);
+                        assertEquals(label, expected, actual);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+/**
+ * Copierで、登録した複製処理、コピーコンストラクタ、複製メソッドを使って複製できることを確かめる<br>
+ * ・非publicなクラス(このパッケージのクラスと、他のクラスのprivateなクラス)も複製できること<br>
+ * ・コピーコンストラクタと複製メソッドは、クラスごとに同じMethodHandleが使い回されること
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class CopierTest {
+    /**
+    * このパッケージの非publicなクラス
+    */
+    static final class Point {
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public Point(Point src) {
+            this(src.x, src.y);
+        }
+
+        public Point copy() {
+            return new Point(this.x + 100, this.y + 100);
+        }
+
+        public String name() {
+            return String.format("%d,%d", this.x, this.y);
+        }
+    }
+
+    /**
+    * 他のクラスからはアクセスできないprivateなクラス
+    */
+    private static final class Hidden {
+        final String value;
+
+        Hidden(String value) {
+            this.value = value;
+        }
+
+        public Hidden(Hidden src) {
+            this(src.value);
+        }
+
+        public Hidden duplicate() {
+            return new Hidden(this.value + "+");
+        }
+    }
+
+    /**
+    * コピーコンストラクタのないクラス
+    */
+    static final class Token {
+        final String value;
+
+        Token(String value) {
+            this.value = value;
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        Point point = new Point(1, 2);
+        Point copy = Copier.copy(point);
+        assertNotSame(point, copy);
+        assertEquals("1,2", copy.name());
+
+        Hidden hidden = new Hidden("h");
+        Hidden hiddenCopy = Copier.copy(hidden);
+        assertNotSame(hidden, hiddenCopy);
+        assertEquals("h", hiddenCopy.value);
+
+        assertNull(Copier.copy(null));
+        try {
+            Copier.copy(new Token("t"));
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testCopyByMethod() {
+        assertEquals("101,102", Copier.copyByMethod("copy", new Point(1, 2)).name());
+        assertEquals("h+", Copier.copyByMethod("duplicate", new Hidden("h")).value);
+        assertNull(Copier.copyByMethod("copy", null));
+
+        // 見つからないメソッド、返り値のクラスが異なるメソッド
+        String[] methods = { "noSuchMethod", "name" };
+        for (String method : methods) {
+            try {
+                Copier.copyByMethod(method, new Point(1, 2));
+                fail(method);
+            } catch (IllegalArgumentException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void testRegister() {
+        Copier.register(Token.class, new UnaryOperator<Token>() {
+            @Override
+            public Token apply(Token t) {
+                return new Token(t.value + "*");
+            }
+        });
+        try {
+            assertEquals("t*", Copier.copy(new Token("t")).value);
+        } finally {
+            Copier.register(Token.class, null);
+        }
+        try {
+            Copier.copy(new Token("t"));
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+
+        // 登録した複製処理はコピーコンストラクタより優先する
+        Copier.register(Point.class, new UnaryOperator<Point>() {
+            @Override
+            public Point apply(Point t) {
+                return new Point(-t.x, -t.y);
+            }
+        });
+        try {
+            assertEquals("-1,-2", Copier.copy(new Point(1, 2)).name());
+        } finally {
+            Copier.register(Point.class, null);
+        }
+        assertEquals("1,2", Copier.copy(new Point(1, 2)).name());
+    }
+
+    @Test
+    public void testCopyAll() {
+        List<Point> src = Arrays.asList(new Point(1, 2), new Point(3, 4));
+        List<Point> byConstructor = Util.newArrayList();
+        Copier.copyAll(null, src, byConstructor);
+        assertEquals(2, byConstructor.size());
+        assertNotSame(src.get(0), byConstructor.get(0));
+        assertEquals("1,2", byConstructor.get(0).name());
+        assertEquals("3,4", byConstructor.get(1).name());
+
+        List<Point> byMethod = Util.newArrayList();
+        Copier.copyAll("copy", src, byMethod);
+        assertEquals("101,102", byMethod.get(0).name());
+        assertEquals("103,104", byMethod.get(1).name());
+    }
+
+    @Test
+    public void testHandlesAreCached() {
+        assertSame(Copier.getCopyConstructor(Point.class), Copier.getCopyConstructor(Point.class));
+        assertSame(Copier.getCopyConstructor(Hidden.class), Copier.getCopyConstructor(Hidden.class));
+        assertNotSame(Copier.getCopyConstructor(Point.class), Copier.getCopyConstructor(Hidden.class));
+        assertSame(Copier.getCopyMethod("copy", Point.class), Copier.getCopyMethod("copy", Point.class));
+        assertSame(Copier.getCopyMethod("duplicate", Hidden.class), Copier.getCopyMethod("duplicate", Hidden.class));
+
+        // 複製した後も同じMethodHandle
+        MethodHandle handle = Copier.getCopyConstructor(Point.class);
+        Copier.copy(new Point(1, 2));
+        assertSame(handle, Copier.getCopyConstructor(Point.class));
+    }
+}
@@ -0,0 +1,77 @@
+package dssp.brailleLib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * IncrementalTranslaterで編集した結果が、テキスト全体を翻訳した結果と同じになることを確かめる<br>
+ * ・外字符、大文字符、数符が続く範囲、改行、最長一致の途中を編集する
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+public class IncrementalTranslaterTest {
+    private static final int TEXT_LENGTH = 3000;
+    private static final int EDIT_COUNT = 300;
+    private static final String[] PIECES = { "\n", "\r", "\r\n", "\n\r", "ab", "AB", "Ab", "123", "a1", "かき", "ゃ",
+            "　", " ", "☆", "" };
+
+    private static BrailleDict dict;
+    private static String corpus;
+
+    @BeforeClass
+    public static void setUp() {
+        TestDicts.initLog();
+        dict = TestDicts.newDict();
+        corpus = TestDicts.newCorpus(dict, 3L, TEXT_LENGTH * 2, false);
+    }
+
+    @Test
+    public void testEdits() {
+        BrailleTranslater translater = BrailleTranslater.newInstance(dict);
+        for (BrailleTranslater.MODE mode : BrailleTranslater.MODE.values()) {
+            translater.setMode(mode);
+            for (int flags = 0; flags < 4; flags++) {
+                boolean ignoreLineBreak = (0 != (flags & 1));
+                boolean includeExtra = (0 != (flags & 2));
+                Random random = new Random(flags);
+                IncrementalTranslater inc = new IncrementalTranslater(translater, ignoreLineBreak, includeExtra,
+                        null);
+                StringBuilder text = new StringBuilder(corpus.substring(0, TEXT_LENGTH));
+                inc.setText(text);
+
+                List<BrailleInfo> expected = Util.newArrayList();
+                for (int i = 0; i < EDIT_COUNT; i++) {
+                    int offset = random.nextInt(text.length() + 1);
+                    int removed = Math.min(text.length() - offset,
+                            (0 == random.nextInt(4) ? random.nextInt(80) : random.nextInt(3)));
+                    String inserted;
+                    if (0 == random.nextInt(3)) {
+                        int start = random.nextInt(TEXT_LENGTH);
+                        inserted = corpus.substring(start, start + random.nextInt(20));
+                    } else {
+                        inserted = PIECES[random.nextInt(PIECES.length)];
+                    }
+                    text.replace(offset, offset + removed, inserted);
+                    int nActual = inc.edit(offset, removed, inserted);
+
+                    String label = String.format("%s flags=%d edit=%d", mode, flags, i);
+                    int nExpected = translater.braileFromSumiji(text, 0, text.length(), expected, ignoreLineBreak,
+                            includeExtra, null);
+                    assertEquals(label, text.toString(), inc.getText());
+                    assertEquals(label, nExpected, nActual);
+                    assertEquals(label, expected, inc.getBrailleList());
+                }
+
+                inc.edit(0, text.length(), null);
+                assertEquals(0, inc.getBrailleCount());
+                assertEquals(0, inc.getBrailleList().size());
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package dssp.brailleLib;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * テスト用の辞書とテキストを生成する<br>
+ * ・マスの列は、どの墨字のマスの列も他の墨字のマスの列の先頭にならないように割り当てる。
+ * そのため、点字から墨字に戻すと元の墨字になる<br>
+ * ・ログはtarget/status.logに出力する
+ *
+ * @author DSSP/Minoru Yagi
+ *
+ */
+final class TestDicts {
+    private static final int[] GAIJIFU = { 5, 6 };
+    private static final int[] OOMOJIFU = { 6 };
+    private static final int[] SUUFU = { 3, 4, 5, 6 };
+
+    private static final String KANA = "あいうえおかきくけこさしすせそたちつてとなにぬねのはひふへほまみむめもやゆよらりるれろわをん";
+    private static final String[] WORDS = { "かき", "かきく", "きゃ", "しゅ", "ちょ", "てぃ", "ふぁ", "こう", "こうえ" };
+    private static final String POST_CHARS = "ゃゅょー";
+    private static final String[] LATIN_WORDS = { "th", "ch" };
+    private static final String UNKNOWN_CHARS = "☆Ω\t漢";
+
+    /**
+    * マスのない墨字<br>
+    * ・後置文字の墨字と、後置文字でないので一致とみなされない墨字
+    */
+    static final String EMPTY_POST_CHAR = "゛";
+    static final String EMPTY_CHAR = "〆";
+
+    /**
+    * 次に割り当てるマスの列の番号
+    */
+    private int nextCode = 0;
+    /**
+    * 辞書に登録するBrailleInfo(登録すると変更できないので、最後にまとめて登録する)
+    */
+    private final List<BrailleInfo> pending = Util.newArrayList();
+
+    private TestDicts() {
+    }
+
+    /**
+    * ログの出力先をtargetにする
+    */
+    static void initLog() {
+        File dir = new File("target");
+        dir.mkdirs();
+        Util.initLog(new File(dir, "status.log").getPath());
+    }
+
+    /**
+    * テスト用の辞書を生成する<br>
+    * ・ひらがな、複数文字の墨字、後置文字、英字(外字符)、大文字(外字符と大文字符)、数字(数符)を含む
+    *
+    * @return 辞書
+    */
+    static BrailleDict newDict() {
+        TestDicts gen = new TestDicts();
+        BrailleDict dict = new BrailleDict();
+        dict.setExtra(BrailleInfo.EXTRA.GAIJIFU, gen.newExtra(dict, ";", GAIJIFU));
+        dict.setExtra(BrailleInfo.EXTRA.OOMOJIFU, gen.newExtra(dict, ",", OOMOJIFU));
+        dict.setExtra(BrailleInfo.EXTRA.SUUFU, gen.newExtra(dict, "#", SUUFU));
+
+        for (int i = 0; i < KANA.length(); i++) {
+            gen.add(dict, KANA.substring(i, i + 1), false);
+        }
+        for (String word : WORDS) {
+            gen.add(dict, word, false);
+        }
+        for (int i = 0; i < POST_CHARS.length(); i++) {
+            gen.add(dict, POST_CHARS.substring(i, i + 1), false).setPostChar(true);
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            gen.add(dict, String.valueOf(c), false, BrailleInfo.EXTRA.GAIJIFU);
+            gen.add(dict, String.valueOf(Character.toUpperCase(c)), false, BrailleInfo.EXTRA.GAIJIFU,
+                    BrailleInfo.EXTRA.OOMOJIFU);
+        }
+        for (String word : LATIN_WORDS) {
+            gen.add(dict, word, false, BrailleInfo.EXTRA.GAIJIFU);
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            gen.add(dict, String.valueOf(c), false, BrailleInfo.EXTRA.SUUFU);
+        }
+        gen.add(dict, EMPTY_POST_CHAR, true).setPostChar(true);
+        gen.add(dict, EMPTY_CHAR, true);
+        for (BrailleInfo info : gen.pending) {
+            dict.replaceBrailleInfo(null, info);
+        }
+
+        return dict;
+    }
+
+    private BrailleInfo newExtra(BrailleDict dict, String nabcc, int[] dots) {
+        BrailleInfo info = dict.newBrailleInfo();
+        info.setType(BrailleInfo.TYPE.ADDITIONAL);
+        info.setNABCC(nabcc);
+        info.addBox(dots);
+
+        return info;
+    }
+
+    private BrailleInfo add(BrailleDict dict, String sumiji, boolean empty, BrailleInfo.EXTRA... extras) {
+        BrailleInfo info = dict.newBrailleInfo();
+        info.setSumiji(sumiji);
+        info.setType(BrailleInfo.TYPE.VISIBLE);
+        for (BrailleInfo.EXTRA extra : extras) {
+            info.setExtra(extra, true);
+        }
+        if (false == empty) {
+            for (int[] dots : this.nextCells()) {
+                info.addBox(dots);
+            }
+        }
+        info.setNABCC(sumiji);
+        this.pending.add(info);
+
+        return info;
+    }
+
+    /**
+    * 次のマスの列を割り当てる<br>
+    * ・1マスの列は点の組9から63(符号のマスを除く)、2マスの列は1マス目が点の組1から8
+    */
+    private int[][] nextCells() {
+        int code = this.nextCode++;
+        for (int mask = 9; mask < 64; mask++) {
+            if (isExtraMask(mask)) {
+                continue;
+            }
+            if (0 == code) {
+                return new int[][] { BrailleInfo.unpackDots(mask) };
+            }
+            code--;
+        }
+
+        return new int[][] { BrailleInfo.unpackDots(1 + (code / 63)), BrailleInfo.unpackDots(1 + (code % 63)) };
+    }
+
+    private static boolean isExtraMask(int mask) {
+        return mask == BrailleInfo.packDots(GAIJIFU) || mask == BrailleInfo.packDots(OOMOJIFU)
+                || mask == BrailleInfo.packDots(SUUFU);
+    }
+
+    /**
+    * 辞書の墨字、改行、空白、未登録の文字を混ぜたテキストを生成する
+    *
+    * @param dict 辞書
+    * @param seed 乱数の種
+    * @param length 文字数の目安
+    * @param roundTrip true=点字から墨字に戻せる文字だけを使う(改行は"\n"と"\r\n"、空白は全角、未登録の文字なし)
+    * @return テキスト
+    */
+    static String newCorpus(BrailleDict dict, long seed, int length, boolean roundTrip) {
+        List<String> pieces = Util.newArrayList();
+        for (String sumiji : dict.getSumijiList()) {
+            if (roundTrip && (EMPTY_POST_CHAR.equals(sumiji) || EMPTY_CHAR.equals(sumiji))) {
+                continue;
+            }
+            pieces.add(sumiji);
+        }
+        String[] separators;
+        if (roundTrip) {
+            separators = new String[] { "\n", "\r\n", "　" };
+        } else {
+            separators = new String[] { "\n", "\r", "\r\n", "\n\r", "\n\n\r", " ", "　" };
+        }
+
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            int r = random.nextInt(100);
+            if (r < 8) {
+                text.append(separators[random.nextInt(separators.length)]);
+            } else if (r < 10 && false == roundTrip) {
+                text.append(UNKNOWN_CHARS.charAt(random.nextInt(UNKNOWN_CHARS.length())));
+            } else if (r < 25) {
+                // 英字、大文字、数字の連続
+                int n = 1 + random.nextInt(4);
+                char first = (char) ((0 == random.nextInt(3) ? 'A' : 'a') + random.nextInt(26));
+                for (int i = 0; i < n; i++) {
+                    if (0 == random.nextInt(3)) {
+                        text.append((char) ('0' + random.nextInt(10)));
+                    } else if (0 == random.nextInt(2)) {
+                        text.append(first);
+                    } else {
+                        text.append((char) ('A' + random.nextInt(26)));
+                    }
+                }
+            } else {
+                text.append(pieces.get(random.nextInt(pieces.size())));
+            }
+        }
+
+        return text.toString();
+    }
+}